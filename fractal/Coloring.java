@@ -0,0 +1,106 @@
+////////////////////////////////////////////////////////////////////////////////
+// Coloring Class //////////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// A Coloring turns the number of iterations it took a point to escape into a
+// colorNumber, an index into the color map.  Since the Drawings keep the raw
+// numbers of iterations (see OrbitBuffer), the FastColorsCalculator can change
+// the coloring of a Drawing, as well as its color map, without testing any
+// points again.
+//
+// LINEAR colors each band of points which escaped after the same number of
+// iterations in one color, stepping through the color map as the number of
+// iterations goes up to maxIterations.  SMOOTH adds the fraction of an
+// iteration by which the orbit escaped (see OrbitBuffer.getFraction()), so
+// that the bands blend into each other.  HISTOGRAM spreads the colors evenly
+// over the pixels of the image, rather than over the numbers of iterations,
+// so that every color is used even when most of the pixels escape quickly.
+
+package fractal;
+
+import fractal.utils.*;
+
+class Coloring
+{
+  private String  name;
+  private boolean smooth;
+  private boolean byHistogram;
+  private int     numColors;
+  private int     maxIterations;
+  private int[]   histogram; // How many pixels escaped up to each count.
+  private int     numEscaped;
+
+  protected static final String LINEAR    = "linear";
+  protected static final String SMOOTH    = "smooth";
+  protected static final String HISTOGRAM = "histogram";
+
+  protected Coloring( String name, int numColors, int maxIterations )
+  {
+    this.name = name;
+    smooth = name.equals( SMOOTH );
+    byHistogram = name.equals( HISTOGRAM );
+    this.numColors = numColors;
+    this.maxIterations = maxIterations;
+    histogram = null;
+    numEscaped = 0;
+  }
+
+  protected void countHistogram( IterationBuffer iterations )
+  {
+    // HISTOGRAM needs to know every pixel's number of iterations first.
+    if( ! byHistogram )
+    {
+      return;
+    }
+    histogram = new int[ maxIterations + 1 ];
+    int[] counts = iterations.getData();
+    for( int p = 0; p < counts.length; p++ )
+    {
+      if( counts[ p ] > 0 && counts[ p ] <= maxIterations )
+      {
+        histogram[ counts[ p ]]++;
+      }
+    }
+    numEscaped = 0;
+    for( int count = 1; count <= maxIterations; count++ )
+    {
+      numEscaped += histogram[ count ];
+      histogram[ count ] = numEscaped;
+    }
+  }
+
+  protected int getColorNumber( int numIterations, float fraction )
+  {
+    // Returns -1 (black) for the points in the set, or which ran out.  With
+    // a fraction of 1, SMOOTH is the same as LINEAR, and so is HISTOGRAM
+    // until countHistogram() is called.
+    if( numIterations <= 0 || numIterations > maxIterations )
+    {
+      return -1;
+    }
+    float position = (float) numIterations / (float) maxIterations;
+    if( smooth )
+    {
+      position = ( numIterations - 1 + fraction ) / (float) maxIterations;
+    }
+    else if( byHistogram && histogram != null )
+    {
+      position = (float) histogram[ numIterations ] / (float) numEscaped;
+    }
+    int colorNum = (int)((float) numColors * ( 1.0 - position ));
+    return ( colorNum == numColors ) ? 0 : colorNum;
+  }
+
+  protected String getName()
+  {
+    return name;
+  }
+
+  protected boolean isLinear()
+  {
+    return name.equals( LINEAR );
+  }
+}
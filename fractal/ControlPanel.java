@@ -25,35 +25,38 @@
 //       Label: colorLabel
 //       Choice: colorChoice
 //     Panel: controlPanels[ 2 ]
+//       Label: coloringLabel
+//       Choice: coloringChoice
+//     Panel: controlPanels[ 3 ]
 //       Label: iterationsLabel
 //       TextField: iterationsText
-//     Panel: controlPanels[ 3 ]
+//     Panel: controlPanels[ 4 ]
 //       Button: stopButton
 //       Label: status2
-//     Panel: controlPanels[ 4 ]
+//     Panel: controlPanels[ 5 ]
 //       Button: deleteButton
 //       Button: helpButton
-//     Panel: controlPanels[ 5 ]
+//     Panel: controlPanels[ 6 ]
 //       Button: prevButton
 //       Button: nextButton
-//     Panel: controlPanels[ 6 ]
+//     Panel: controlPanels[ 7 ]
 //       Label: rMinLabel
 //       TextField: rMinText
-//     Panel: controlPanels[ 7 ]
+//     Panel: controlPanels[ 8 ]
 //       Label: rMaxLabel
 //       TextField: rMaxText
-//     Panel: controlPanels[ 8 ]
+//     Panel: controlPanels[ 9 ]
 //       Label: iMinLabel
 //       TextField: iMinText
-//     Panel: controlPanels[ 9 ]
+//     Panel: controlPanels[ 10 ]
 //       Label: iMaxLabel
 //       TextField: iMaxText
-//     Panel: controlPanels[ 10 ]
-//       Checkbox: drawJuliaCheckbox
 //     Panel: controlPanels[ 11 ]
+//       Checkbox: drawJuliaCheckbox
+//     Panel: controlPanels[ 12 ]
 //       Label: juliaCRLabel
 //       TextField: juliaCRText
-//     Panel: controlPanels[ 12 ]
+//     Panel: controlPanels[ 13 ]
 //       Label: juliaCILabel
 //       TextField: juliaCIText
 
@@ -61,6 +64,7 @@ package fractal;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.math.BigDecimal;
 import fractal.utils.*;
 
 class ControlPanel extends Panel
@@ -68,7 +72,7 @@ class ControlPanel extends Panel
   private DrawingCanvas     drawingCanvas;
   private Fractal           fractal;
   private Insets            insets;
-  private final int         NUM_ROWS = 13;
+  private final int         NUM_ROWS = 14;
   private boolean           parameterChangeFlag; // See hasNewParameters()
 
   private GridLayout        controlsGrid;
@@ -85,8 +89,10 @@ class ControlPanel extends Panel
 
   private Checkbox          drawJuliaCheckbox;
   private Choice            colorChoice;
+  private Choice            coloringChoice;
 
   private Label             colorLabel;
+  private Label             coloringLabel;
   private Label             iMaxLabel;
   private Label             iMinLabel;
   private Label             iterationsLabel;
@@ -118,6 +124,23 @@ class ControlPanel extends Panel
     colorChoice.addItem( colorSchemeName );
   }
 
+  protected void addColoring( String coloringName )
+  {
+    coloringChoice.addItem( coloringName );
+  }
+
+  public boolean getColoring( StringBuffer coloringName )
+  {
+    String coloring = coloringChoice.getSelectedItem();
+    if( coloring == null )
+    {
+      return false;
+    }
+    coloringName.setLength( 0 );
+    coloringName.append( coloring );
+    return true;
+  }
+
   public boolean getColor( StringBuffer colorSchemeName )
   {
     try
@@ -139,27 +162,28 @@ class ControlPanel extends Panel
 
   protected boolean getComplexRect( ComplexRectangle newRect )
   {
-    double rMin;
-    double rMax;
-    double iMin;
-    double iMax;
+    BigDecimal rMin;
+    BigDecimal rMax;
+    BigDecimal iMin;
+    BigDecimal iMax;
 
     // Get the user's new draw parameters from the text controls.
     // Convert them from Strings to numbers, if possible.
+    // They are kept exact; a double would lose the digits of a deep zoom.
     try
     {
-      rMin = Double.valueOf( rMinText.getText().trim() ).doubleValue();
-      rMax = Double.valueOf( rMaxText.getText().trim() ).doubleValue();
-      iMin = Double.valueOf( iMinText.getText().trim() ).doubleValue();
-      iMax = Double.valueOf( iMaxText.getText().trim() ).doubleValue();
+      rMin = new BigDecimal( rMinText.getText().trim() );
+      rMax = new BigDecimal( rMaxText.getText().trim() );
+      iMin = new BigDecimal( iMinText.getText().trim() );
+      iMax = new BigDecimal( iMaxText.getText().trim() );
 
-      if( rMin >= rMax )
+      if( rMin.compareTo( rMax ) >= 0 )
       {
         setStatus( " Warning: The Real Max is less than the Min." );
         return false;
       }
 
-      if( iMin >= iMax )
+      if( iMin.compareTo( iMax ) >= 0 )
       {
         setStatus( " Warning: Imaginary Max is less than the Min." );
         return false;
@@ -300,6 +324,7 @@ class ControlPanel extends Panel
 
     // Color:
     colorChoice.addKeyListener( returnKeyHandler );
+    coloringChoice.addKeyListener( returnKeyHandler );
 
     // See if the user changes any parameters by typing.
     TextChangeHandler changeHandler = new TextChangeHandler();
@@ -369,6 +394,15 @@ class ControlPanel extends Panel
     colorChoice.setFont( Fractal.FONT );
     controlPanels[ rowNum ].add( colorChoice );
 
+    // "Coloring:" || Choice
+    rowNum++;
+    coloringLabel = new Label( " Coloring:" );
+    coloringLabel.setFont( Fractal.FONT );
+    controlPanels[ rowNum ].add( coloringLabel );
+    coloringChoice = new Choice();
+    coloringChoice.setFont( Fractal.FONT );
+    controlPanels[ rowNum ].add( coloringChoice );
+
     // "Iterations:" || TextField
     rowNum++;
     iterationsLabel = new Label( " Iterations:" );
@@ -590,23 +624,29 @@ class ControlPanel extends Panel
 
   protected void updateComplexRect( ComplexRectangle rect )
   {
-    double rMin = rect.getRMin();
-    double rMax = rect.getRMax();
-    double iMin = rect.getIMin();
-    double iMax = rect.getIMax();
+    BigDecimal rMin = rect.getBigRMin();
+    BigDecimal rMax = rect.getBigRMax();
+    BigDecimal iMin = rect.getBigIMin();
+    BigDecimal iMax = rect.getBigIMax();
 
     // Adjust the zoom factor to agree with these numbers.
     fractal.adjustZoomFactor( rect );
 
-    rMinText.setText( "" + Fractal.doubleAsString( rMin ));
-    rMaxText.setText( "" + Fractal.doubleAsString( rMax ));
-    iMinText.setText( "" + Fractal.doubleAsString( iMin ));
-    iMaxText.setText( "" + Fractal.doubleAsString( iMax ));
+    rMinText.setText( "" + Fractal.bigDecimalAsString( rMin ));
+    rMaxText.setText( "" + Fractal.bigDecimalAsString( rMax ));
+    iMinText.setText( "" + Fractal.bigDecimalAsString( iMin ));
+    iMaxText.setText( "" + Fractal.bigDecimalAsString( iMax ));
+  }
+
+  protected void updateColoring( String coloringName )
+  {
+    coloringChoice.select( coloringName );
   }
 
   protected void updateDrawing( Drawing d )
   {
     updateColor( d.getColor() );
+    updateColoring( d.getColoring() );
     updateComplexRect( d.getComplexRect() );
     updateIterations( d.getMaxIterations() );
     updateJulia( d );
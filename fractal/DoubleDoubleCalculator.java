@@ -0,0 +1,129 @@
+////////////////////////////////////////////////////////////////////////////////
+// DoubleDoubleCalculator Class ////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The DoubleDoubleCalculator draws both Mandelbrot and Julia Sets at zooms a
+// little too deep for doubles, by iterating every pixel with DoubleDoubles,
+// which carry about 32 decimal digits instead of about 16.  That is several
+// times slower than iterating with doubles, but it needs no reference orbit,
+// and so it has none of the perturbation theory's glitches; it is the better
+// choice until the pixels are too small even for DoubleDoubles.
+//
+// A pixel's coordinates do not fit in the doubles which are passed around by
+// the FractalCalculator, so getReal() and getImaginary() return the distance of
+// a pixel from the corner of the image, and testPoint() adds that distance to
+// the corner, which is kept as a DoubleDouble.
+//
+// The main cardioid and period-2 bulb are not tested for here: near their
+// edges, a test done with doubles would be wrong about too many pixels.
+// Periodicity checking takes care of the points inside them instead.
+
+package fractal;
+
+import fractal.utils.*;
+
+class DoubleDoubleCalculator extends FractalCalculator
+{
+  private boolean      julia;
+  private DoubleDouble juliaR;
+  private DoubleDouble juliaI;
+  private DoubleDouble cornerR; // The bottom left corner of the image.
+  private DoubleDouble cornerI;
+
+  protected DoubleDoubleCalculator( FractalMediator fractal,
+                                    Drawing newDrawing )
+  {
+    super( fractal, newDrawing );
+    julia = ( newDrawing instanceof JuliaDrawing );
+    if( julia )
+    {
+      ComplexPoint juliaPoint = ((JuliaDrawing) newDrawing).getJuliaPoint();
+      juliaR = new DoubleDouble( juliaPoint.getReal() );
+      juliaI = new DoubleDouble( juliaPoint.getImaginary() );
+    }
+    cornerR = new DoubleDouble( newRect.getBigRMin() );
+    cornerI = new DoubleDouble( newRect.getBigIMin() );
+  }
+
+  protected String getConsoleOutputString()
+  {
+    return new String( "Calculating new fractal, using double-doubles." );
+  }
+
+  protected double getImaginary( int y )
+  {
+    // The distance of row y from the bottom of the image.
+    return ((double)( imageHeight - y )) * delta;
+  }
+
+  protected double getReal( int x )
+  {
+    // The distance of column x from the left of the image.
+    return ((double) x ) * delta;
+  }
+
+  protected int testPoint( double r, double i, int maxIterations )
+  {
+    // The same as MandelbrotCalculator or JuliaCalculator, with DoubleDoubles.
+    // The DoubleDoubles belong to this call alone, so that the worker Threads
+    // never share any of them.
+    DoubleDouble zR = new DoubleDouble().set( cornerR ).add( r );
+    DoubleDouble zI = new DoubleDouble().set( cornerI ).add( i );
+    DoubleDouble cR = julia ? juliaR : new DoubleDouble().set( zR );
+    DoubleDouble cI = julia ? juliaI : new DoubleDouble().set( zI );
+    DoubleDouble zRSquared = new DoubleDouble();
+    DoubleDouble zISquared = new DoubleDouble();
+    DoubleDouble difference = new DoubleDouble();
+
+    // The saved point for periodicity checking:
+    DoubleDouble savedR = new DoubleDouble().set( zR );
+    DoubleDouble savedI = new DoubleDouble().set( zI );
+    int savedInterval = 8;
+    int nextSave = savedInterval;
+
+    for( int n = 1; n <= maxIterations; n++ )
+    {
+      if( ( n & ( STOP_INTERVAL - 1 )) == 0 && stopRequested )
+      {
+        return 0; // It will not be used.
+      }
+
+      // z <= z*z + c
+      zRSquared.set( zR ).square();
+      zISquared.set( zI ).square();
+      zI.multiply( zR ).multiply( 2.0 ).add( cI );
+      zR.set( zRSquared ).subtract( zISquared ).add( cR );
+
+      // Doubles are precise enough to tell if the point has escaped.
+      double zr = zR.doubleValue();
+      double zi = zI.doubleValue();
+      if( zr * zr + zi * zi >= 4 )
+      {
+        return n;
+      }
+
+      if( periodicityChecking )
+      {
+        if( Math.abs( difference.set( zR ).subtract( savedR ).doubleValue() )
+              < periodicityTolerance &&
+            Math.abs( difference.set( zI ).subtract( savedI ).doubleValue() )
+              < periodicityTolerance )
+        {
+          stats.countPeriodicPoint();
+          return 0; // The orbit is periodic.
+        }
+        if( n == nextSave )
+        {
+          savedR.set( zR );
+          savedI.set( zI );
+          savedInterval *= 2;
+          nextSave = n + savedInterval;
+        }
+      }
+    }
+    return RAN_OUT;
+  }
+}
@@ -8,6 +8,12 @@
 // Drawing is a simple class to hold Drawing data. There are three kinds of
 // Drawings: Mandelbrot, Julia, and Help.  This class is not abstract, but
 // rather, holds the data to define a Mandelbrot Drawing.
+//
+// A Drawing's image is indexed by colorNumber (see FractalCalculator), so it
+// serves both to show the Drawing and to color it again later on, and the
+// Drawing needs no separate copy of the colorNumbers.  Once a Drawing is
+// deleted, its image's pixels and its OrbitBuffer go back to the BufferPool
+// (see HistoryStore), rather than waiting for the garbage collector.
 
 package fractal;
 
@@ -16,11 +22,12 @@ import fractal.utils.*;
 
 class Drawing
 {
-  protected int[][]           colorNumbers; // Used by the FastColorsCalculator.
   protected String            color;
+  protected String            coloring; // See Coloring.
   protected ComplexRectangle  complexRect;
   protected Image             image;
   protected int               maxIterations;
+  protected OrbitBuffer       orbits; // Used by ResumeCalculator.
   protected Rectangle         zoom;
 
   protected Drawing( ComplexRectangle complexRect, int maxIterations,
@@ -31,7 +38,8 @@ class Drawing
     this.image = image;
     this.zoom = zoom;
     this.color = color;
-    colorNumbers = null;
+    coloring = Coloring.LINEAR;
+    orbits = null;
   }
 
   protected void dump()
@@ -39,31 +47,25 @@ class Drawing
     System.out.println( getConsoleOutputString() );
     System.out.println( "Max Iterations = " + maxIterations );
     System.out.println( "Color scheme = " + color );
+    System.out.println( "Coloring = " + coloring );
     System.out.println( "Real Min = " +
-      Fractal.doubleAsString( complexRect.getRMin() ));
+      Fractal.bigDecimalAsString( complexRect.getBigRMin() ));
     System.out.println( "Real Max = " +
-      Fractal.doubleAsString( complexRect.getRMax() ));
+      Fractal.bigDecimalAsString( complexRect.getBigRMax() ));
     System.out.println( "Imaginary Min = " +
-      Fractal.doubleAsString( complexRect.getIMin() ));
+      Fractal.bigDecimalAsString( complexRect.getBigIMin() ));
     System.out.println( "Imaginary Max = " +
-      Fractal.doubleAsString( complexRect.getIMax() ));
-  }
-
-  public void finalize()
-  {
-    // Called automatically by the system's garbage collector.
-    // This helps free up resources quickly when a drawing gets deleted.
-    image.flush();
+      Fractal.bigDecimalAsString( complexRect.getBigIMax() ));
   }
 
-  protected int[][] getColorNumbers()
+  protected String getColor()
   {
-    return colorNumbers;
+    return color;
   }
 
-  protected String getColor()
+  protected String getColoring()
   {
-    return color;
+    return coloring;
   }
 
   protected ComplexRectangle getComplexRect()
@@ -86,6 +88,11 @@ class Drawing
     return maxIterations;
   }
 
+  protected OrbitBuffer getOrbits()
+  {
+    return orbits;
+  }
+
   protected Rectangle getZoom()
   {
     return zoom;
@@ -106,9 +113,14 @@ class Drawing
     image = i;
   }
 
-  protected void setColorNumbers( int[][] colors )
+  protected void setColoring( String coloring )
+  {
+    this.coloring = coloring;
+  }
+
+  protected void setOrbits( OrbitBuffer o )
   {
-    colorNumbers = colors;
+    orbits = o;
   }
 
   protected void setMaxIterations( int mi )
@@ -6,12 +6,23 @@
 // and send David some email ( david@leberknight.com ).
 //
 // The DrawingCanvas class is responsible for painting the image.
-// It also handles the mouse events and the zoom rectangle graphics.
+// It also handles the mouse events and the zoom rectangle graphics.  The zoom
+// rectangle is drawn over the image on the canvas, never into the image
+// itself: a Drawing's image may share its pixels with other Drawings' (see
+// FastColorsCalculator).  Since a finished image never changes, it is copied
+// once into an RGB image, which is much quicker to paint over and over again
+// than the indexed image, while a zoom rectangle is dragged.
+// While a new fractal is being calculated, the canvas may show a preview of
+// the unfinished image instead of the current Drawing.
+//
+// Dragging the mouse with the Shift key held down, or pressing an arrow key,
+// pans the view instead of zooming (see Fractal.doPan()).
 
 package fractal;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.*;
 
 class DrawingCanvas extends Canvas
                     implements MouseListener, MouseMotionListener
@@ -19,18 +30,28 @@ class DrawingCanvas extends Canvas
   private Fractal        fractal;
 
   // The state required for the zoom rectangle graphics:
-  private Rectangle      lastZoom;
   private Rectangle      zoom;
   private boolean        hasZoom;
   private boolean        dragInterrupted;
   private boolean        mouseDisabled;
   private boolean        mouseOverCanvas;
+  private boolean        panning; // Shift-dragging the image.
   private int            mouseDown; // There's more than one mouse button.
 
+  // An arrow key pans the view by 1 / PAN_STEPS of the image.
+  private static final int PAN_STEPS = 10;
+
   // The initial mouse press point (corner) for a zoom rectangle.
   private int            x1;
   private int            y1;
 
+  // The unfinished image of the fractal being calculated, if any.
+  private Image          preview = null;
+
+  // The RGB copy of the last image painted by paintImage(), and that image.
+  private BufferedImage  screenImage = null;
+  private Image          screenImageOf = null;
+
   // The very first call to paint() has special (initialization) behavior.
   private boolean        initialScreen = true;
 
@@ -41,13 +62,13 @@ class DrawingCanvas extends Canvas
   {
     this.fractal = fractal;
     zoom = new Rectangle();
-    lastZoom = new Rectangle();
     dragInterrupted = false;
     hasZoom = false;
     initialScreen = true;
     preferredSize = null;
     mouseDisabled = true;
     mouseOverCanvas = true;
+    panning = false;
     mouseDown = 0;
     x1 = 0;
     y1 = 0;
@@ -97,6 +118,7 @@ class DrawingCanvas extends Canvas
     // Listen for the return key, which should always Draw.
     // The return key is a KeyEvent for Canvases.
     addKeyListener( new ReturnKeyHandler() );
+    addKeyListener( new ArrowKeyHandler() );
   }
 
   protected void interruptZoomDrag()
@@ -128,9 +150,13 @@ class DrawingCanvas extends Canvas
         }
         Drawing current = fractal.getCurrentDrawing();
         Image currentImage = current.getImage();
-        if( currentImage != null )
+        if( preview != null )
         {
-          g.drawImage( currentImage, 0, 0, null );
+          g.drawImage( preview, 0, 0, null );
+        }
+        else if( currentImage != null )
+        {
+          paintImage( g, currentImage );
         }
       }
       catch( OutOfMemoryError oom )
@@ -149,9 +175,7 @@ class DrawingCanvas extends Canvas
     if( d.hasZoom() )
     {
       hasZoom = true;
-      Rectangle bounds = d.getZoom();
-      lastZoom.setBounds( bounds );
-      zoom.setBounds( bounds );
+      zoom.setBounds( d.getZoom() );
     }
     else
     {
@@ -163,6 +187,14 @@ class DrawingCanvas extends Canvas
     // and the Draw Julia Set checkbox is checked.
     mouseDisabled = ( d instanceof HelpDrawing );
 
+    preview = null; // The new Drawing is finished.
+    repaint(); // Schedules a call to paint() in another Thread.
+  }
+
+  protected void showPreview( Image i )
+  {
+    // Show an unfinished image; null means show the current Drawing again.
+    preview = i;
     repaint(); // Schedules a call to paint() in another Thread.
   }
 
@@ -179,7 +211,7 @@ class DrawingCanvas extends Canvas
 
   private void drawXORRectangle( Graphics g, Rectangle rect )
   {
-    // This is used only by the mouse event handling methods.
+    // This is used only by paintImage().
     g.setXORMode( Color.white );
 
     int x = rect.getBounds().x;
@@ -191,6 +223,38 @@ class DrawingCanvas extends Canvas
     g.setPaintMode();
   }
 
+  private Image getScreenImage( Image image )
+  {
+    // Returns the RGB copy of the image, copying it only once.  The copy is
+    // made into the same BufferedImage every time.
+    if( image != screenImageOf )
+    {
+      int width = image.getWidth( null );
+      int height = image.getHeight( null );
+      if( screenImage == null || screenImage.getWidth() != width ||
+          screenImage.getHeight() != height )
+      {
+        screenImage = new BufferedImage( width, height,
+                                         BufferedImage.TYPE_INT_RGB );
+      }
+      Graphics g = screenImage.getGraphics();
+      g.drawImage( image, 0, 0, null );
+      g.dispose();
+      screenImageOf = image;
+    }
+    return screenImage;
+  }
+
+  private void paintImage( Graphics g, Image image )
+  {
+    // Paint the image, with the zoom rectangle (if any) over it.
+    g.drawImage( getScreenImage( image ), 0, 0, null );
+    if( hasZoom )
+    {
+      drawXORRectangle( g, zoom );
+    }
+  }
+
   private Rectangle makeRectangle( int x1, int x2, int y1, int y2 )
   {
     // This is used only by the mouse event handling methods.
@@ -239,7 +303,6 @@ class DrawingCanvas extends Canvas
   public void mouseDragged( MouseEvent e )
   {
     // Called by AWT for all registered MouseMotionListener objects.
-    Graphics imageGraphics = null;
     Graphics canvasGraphics = null;
 
     synchronized( fractal )
@@ -256,10 +319,18 @@ class DrawingCanvas extends Canvas
           return;
         }
 
-        // Update the Canvas image to show the drag rectangle.
         Image currentImage = fractal.getCurrentDrawing().getImage();
-        imageGraphics = currentImage.getGraphics();
         canvasGraphics = this.getGraphics();
+        if( panning )
+        {
+          // Show the image where it has been dragged to.
+          Dimension size = getPreferredSize();
+          canvasGraphics.setColor( Color.black );
+          canvasGraphics.fillRect( 0, 0, size.width, size.height );
+          canvasGraphics.drawImage( getScreenImage( currentImage ),
+                                    e.getX() - x1, e.getY() - y1, null );
+          return;
+        }
 
         if( dragInterrupted )
         {
@@ -271,22 +342,13 @@ class DrawingCanvas extends Canvas
           dragInterrupted = false;
         }
 
-        if( hasZoom )
-        {
-          lastZoom.setBounds( zoom );
-          hasZoom = false;
-
-          // UnDraw the previous rectangle using XOR mode
-          drawXORRectangle( imageGraphics, lastZoom );
-        }
-
         int xCurrent = e.getX();
         int yCurrent = e.getY();
 
+        // Update the Canvas to show the drag rectangle.
         hasZoom = true;
         zoom.setBounds( makeRectangle( x1, xCurrent, y1, yCurrent ));
-        drawXORRectangle( imageGraphics, zoom );
-        canvasGraphics.drawImage( currentImage, 0, 0, null );
+        paintImage( canvasGraphics, currentImage );
       }
       catch( OutOfMemoryError oom )
       {
@@ -302,10 +364,6 @@ class DrawingCanvas extends Canvas
         {
           canvasGraphics.dispose(); // garbage.
         }
-        if( imageGraphics != null )
-        {
-          imageGraphics.dispose(); // garbage.
-        }
       }
     }
   }
@@ -337,7 +395,6 @@ class DrawingCanvas extends Canvas
   public void mousePressed( MouseEvent e )
   {
     // Called by AWT for all registered MouseListener objects.
-    Graphics imageGraphics = null;
     Graphics canvasGraphics = null;
 
     synchronized( fractal )
@@ -362,15 +419,11 @@ class DrawingCanvas extends Canvas
 
         if( hasZoom )
         {
-          // UnDraw the previous rectangle using XOR mode.
-          // This will revert the graphics back to the original
-          // colors before the rectangle was ever drawn.
+          // Paint the image again, without the previous rectangle.
           hasZoom = false;
           Image currentImage = fractal.getCurrentDrawing().getImage();
-          imageGraphics = currentImage.getGraphics();
           canvasGraphics = this.getGraphics();
-          drawXORRectangle( imageGraphics, zoom );
-          canvasGraphics.drawImage( currentImage, 0, 0, null );
+          paintImage( canvasGraphics, currentImage );
         }
 
         if( ! mouseOverCanvas )
@@ -378,9 +431,11 @@ class DrawingCanvas extends Canvas
           return;
         }
 
-        // x1,y1 are the first corner of the new zoom rectangle.
+        // x1,y1 are the first corner of the new zoom rectangle, or where
+        // the image was grabbed, to pan.
         x1 = e.getX();
         y1 = e.getY();
+        panning = e.isShiftDown();
       }
       catch( OutOfMemoryError oom )
       {
@@ -396,10 +451,6 @@ class DrawingCanvas extends Canvas
         {
           canvasGraphics.dispose(); // garbage.
         }
-        if( imageGraphics != null )
-        {
-          imageGraphics.dispose(); // garbage.
-        }
       }
     }
   }
@@ -407,7 +458,6 @@ class DrawingCanvas extends Canvas
   public void mouseReleased( MouseEvent e )
   {
     // Called by AWT for all registered MouseListener objects.
-    Graphics imageGraphics = null;
     Graphics canvasGraphics = null;
 
     synchronized( fractal )
@@ -437,22 +487,23 @@ class DrawingCanvas extends Canvas
         {
           dragInterrupted = false;
           hasZoom = false;
+          panning = false;
           return;
         }
 
-        // Get the Graphics objects.
+        if( panning )
+        {
+          // The point grabbed moves to where the mouse was let go.
+          panning = false;
+          fractal.doPan( x1 - e.getX(), y1 - e.getY() );
+          return;
+        }
+
+        // Get the Graphics object.
         Image currentImage = fractal.getCurrentDrawing().getImage();
-        imageGraphics = currentImage.getGraphics();
         canvasGraphics = this.getGraphics();
 
-        if( hasZoom )
-        {
-          lastZoom.setBounds( zoom );
-
-          // UnDraw the previous rectangle using XOR mode
-          drawXORRectangle( imageGraphics, lastZoom );
-        }
-        else
+        if( ! hasZoom )
         {
           // There is no zoom defined, yet.
           if( mouseOverCanvas )
@@ -478,9 +529,8 @@ class DrawingCanvas extends Canvas
         {
           hasZoom = true;
           fractal.setStatus( " " );
-          drawXORRectangle( imageGraphics, zoom );
         }
-        canvasGraphics.drawImage( currentImage, 0, 0, null );
+        paintImage( canvasGraphics, currentImage );
       }
       catch( OutOfMemoryError oom )
       {
@@ -496,10 +546,34 @@ class DrawingCanvas extends Canvas
         {
           canvasGraphics.dispose(); // garbage.
         }
-        if( imageGraphics != null )
-        {
-          imageGraphics.dispose(); // garbage.
-        }
+      }
+    }
+  }
+
+  class ArrowKeyHandler extends KeyAdapter
+  {
+    // This Inner Class is used to listen for the arrow keys being pressed
+    // when this Canvas has the focus, to pan the view.
+    public void keyPressed( KeyEvent e )
+    {
+      int key = e.getKeyCode();
+      int dx = fractal.getImageWidth() / PAN_STEPS;
+      int dy = fractal.getImageHeight() / PAN_STEPS;
+      if( key == KeyEvent.VK_LEFT )
+      {
+        fractal.doPan( -dx, 0 );
+      }
+      else if( key == KeyEvent.VK_RIGHT )
+      {
+        fractal.doPan( dx, 0 );
+      }
+      else if( key == KeyEvent.VK_UP )
+      {
+        fractal.doPan( 0, -dy );
+      }
+      else if( key == KeyEvent.VK_DOWN )
+      {
+        fractal.doPan( 0, dy );
       }
     }
   }
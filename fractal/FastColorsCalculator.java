@@ -5,30 +5,67 @@
 // at any time, provided that they give an appropriate reference to this source,
 // and send David some email ( david@leberknight.com ).
 //
-// The FastColorsCalculator is a performance optimization.  The colorNumbers
-// from the original Drawing are kept around, so that they can be used to
-// quickly create a new image, when only the color scheme has changed.
+// The FastColorsCalculator is a performance optimization.  The images are
+// indexed by colorNumber (see FractalCalculator), so when only the color
+// scheme has changed, not a single pixel changes: the new image shares the
+// current image's pixels, and only has a new IndexColorModel.  That takes
+// time in proportion to the number of colors, not of pixels.  (A Drawing's
+// image is never drawn on; see DrawingCanvas.)  The raw numbers of iterations
+// are kept as well (see OrbitBuffer), so that the Coloring can be changed
+// quickly too, without testing any points.
 
 package fractal;
 
-import java.awt.Color;
+import java.awt.image.*;
+import fractal.utils.*;
 
 class FastColorsCalculator extends FractalCalculator
 {
-  protected FastColorsCalculator( Fractal fractal, Drawing newDrawing )
+  private BufferedImage   previousImage; // That of the current Drawing.
+  private boolean         recolor; // Does the Coloring change?
+
+  protected FastColorsCalculator( FractalMediator fractal, Drawing newDrawing )
   {
     super( fractal, newDrawing );
+    progressive = false; // There's no need for a preview; this is quick.
+    Drawing current = fractal.getCurrentDrawing();
+    previousImage = (BufferedImage) current.getImage();
+    recolor = ( current.getOrbits() != null ) &&
+              ! current.getColoring().equals( newDrawing.getColoring() );
   }
 
-  protected Color getColor( int x, int y )
+  protected boolean beginPasses()
   {
-    Color c = Color.black;
-    int colorNum = colorNumbers[ x ][ y ];
-    if( colorNum != -1 )  // By convention, -1 indicates black.
+    if( recolor )
+    {
+      coloring.countHistogram( orbits.getIterations() );
+    }
+    return super.beginPasses();
+  }
+
+  protected boolean calcPixels( int xMin, int yMin, int width, int height )
+  {
+    // Find every colorNumber again from the raw number of iterations, unless
+    // the pixels are shared.
+    if( ! recolor )
+    {
+      return true; // The pixels are already there.
+    }
+    DataBuffer previousPixels = previousImage.getRaster().getDataBuffer();
+    for( int y = yMin; y < yMin + height; y++ )
     {
-      c = colorMap[ colorNum ];
+      int offset = y * imageWidth;
+      for( int x = xMin; x < xMin + width; x++ )
+      {
+        int known = previousPixels.getElem( offset + x ) - 1;
+        pixels.setElem( offset + x, getPixel( getColorNumber( x, y, known )));
+      }
+      if( ! maybeYieldOrStop( y ) )
+      {
+        return false; // stop was requested.
+      }
     }
-    return c;
+    return true;
   }
 
   protected String getConsoleOutputString()
@@ -36,9 +73,27 @@ class FastColorsCalculator extends FractalCalculator
     return new String( "Remapping colors from previously calculated fractal." );
   }
 
-  protected int[][] getColorNumbers()
+  protected IterationBuffer getColorNumbers()
+  {
+    // Not needed: calcPixels() goes straight from the current Drawing's
+    // pixels, or its raw numbers of iterations, to the new pixels.
+    return null;
+  }
+
+  protected OrbitBuffer getOrbits()
+  {
+    // The new colors can still be continued with more iterations.
+    return fractal.getCurrentDrawing().getOrbits();
+  }
+
+  protected Drawing getSalvage()
   {
-    return fractal.getCurrentDrawing().getColorNumbers();
+    return null; // There is nothing worth keeping from a stopped recoloring.
+  }
+
+  protected boolean isRecolored()
+  {
+    return false; // calcPixels() already uses the Coloring.
   }
 
   protected boolean maybeYieldOrStop( int loopCounter )
@@ -50,10 +105,30 @@ class FastColorsCalculator extends FractalCalculator
     return true; // Don't yield.  Go fast!
   }
 
+  protected BufferedImage newImage()
+  {
+    // Share the current image's pixels, with the new color map.
+    if( recolor )
+    {
+      return super.newImage();
+    }
+    return new BufferedImage( colorModel, previousImage.getRaster(),
+                              false, null );
+  }
+
+  protected void releaseImage()
+  {
+    // Unless the Coloring changed, the pixels are the current image's.
+    if( recolor )
+    {
+      super.releaseImage();
+    }
+  }
+
   protected int testPoint( double zR, double zI, int maxIterations )
   {
     // The code will NEVER get here. Nevertheless, this method must be provided
     // because it is declared to be abstract in the base class.
     return -1;
   }
-}
\ No newline at end of file
+}
@@ -23,6 +23,14 @@
 // < PARAM NAME = "ImageWidth" VALUE = 470 >
 // < PARAM NAME = "ImageHeight" VALUE = 470 >
 // < PARAM NAME = "NumColors" VALUE = 512 >
+// < PARAM NAME = "PeriodicityChecking" VALUE = "on" >
+// < PARAM NAME = "Subdivision" VALUE = "off" >
+// < PARAM NAME = "ProgressiveRefinement" VALUE = "on" >
+// < PARAM NAME = "Lanes" VALUE = "on" >
+// < PARAM NAME = "SeriesApproximation" VALUE = "on" >
+// < PARAM NAME = "Symmetry" VALUE = "on" >
+// < PARAM NAME = "ProbeBudget" VALUE = 4000000 >
+// < PARAM NAME = "HistoryBudget" VALUE = 64 >
 // < /applet >
 //
 // Note: for the Applet version, there are two size parameters that must be set
@@ -31,37 +39,62 @@
 // version's command line (below) set the size of the DrawingCanvas image.
 //
 // Example Command Line for Application:
-// java fractal.Fractal -w 800 -h 800 -c 1024
+// java fractal.Fractal -w 800 -h 800 -c 1024 -p on -s on -r on -l on -a on
+//                      -m on -b 4000000 -k 64
+//
+// The optional switches turn performance optimizations on or off, so that
+// their effect on speed can be compared: -p is for periodicity checking,
+// -s is for Mariani-Silver subdivision (see MarianiSilverCalculator), -r is
+// for progressive refinement, -l is for iterating several points at once
+// (see FractalCalculator), -a is for the series approximation of deep zooms
+// (see PerturbationCalculator), -m is for copying the mirror image half of a
+// symmetric image (see FractalCalculator).  -b is the number of iterations
+// which may be spent on probing a new zoom for how many iterations it needs
+// (see IterationProbe); 0 falls back to a guess from the zoom factor.  -k is
+// the number of megabytes the Previous and Next Drawings may take before the
+// least recently visited ones are moved to temporary files (see
+// HistoryStore).  Their buffers are then used again for the next Drawings
+// (see BufferPool), so that calculating a Drawing allocates nothing large.
 //
 // The Fractal class acts as the executive / controller for the entire Fractal
 // program.  It is an example of the "Mediator" Design Pattern.  This code may
 // also be thought of in terms of the "Model View Controller" Design Pattern,
 // where class Fractal is the Controller, the Calculators and Drawings are the
-// Model, and the ControlPanel and DrawingCanvas make up the View.
+// Model, and the ControlPanel and DrawingCanvas make up the View.  The
+// Calculators see only the FractalMediator part of it.
 //
 // The Fractal program is multi-threaded: There are Java AWT Threads which call
 // into the code to paint(), and notify us of user events, such as mouse
 // movement and button clicks. Refer to ControlPanel and DrawingCanvas for more
 // on detecting user events. There are Threads originating from the applet
-// browser, such as init() and stop(). Finally, there is a separate Thread to
-// calculate each new Fractal.  Care must be taken whenever two Threads try to
-// access the same object(s) at the same time; this code uses a single "monitor"
-// object, the single instance of Fractal, to control Thread synchronization.
+// browser, such as init() and stop(). Finally, there is one long-lived render
+// Thread, which runs the calculator of each new Fractal in turn; each of them
+// hands out tiles of the image to a pool of worker Threads, one per processor
+// (see FractalCalculator).  Stop takes effect at once, and whatever the
+// stopped calculator had finished is kept (the "salvage"), to be reused by
+// the next Drawing wherever it overlaps, just like the current Drawing's
+// pixels (see makeNewCalculator()).  Care must be taken whenever two Threads
+// try to access the same object(s) at the same time; this code uses a single
+// "monitor" object, the single instance of Fractal, to control Thread
+// synchronization.
 //
 // Note: a few minor features in the UI do not work across all browsers & JVMs.
 // For example, on some browsers typing 'Enter' *always* calls doDraw()...
-// There is one other known defect: it is possible to zoom in so deeply that
-// arithmetic precision is required beyond that provided by Java's primative
-// type, double, resulting in a loss of image resolution.  Replacing references
+//
+// It is possible to zoom in so deeply that arithmetic precision is required
+// beyond that provided by Java's primative type, double.  Replacing references
 // to double with java.math.BigDecimal would fix this, but such a simple
 // approach would not be viable because number-crunching using BigDecimals is
-// orders of magnitude slower than using doubles. It would be possible to use a
-// DeepZoomCalculator "strategy" that would use BigDecimal arithmetic only as
-// required (using primative doubles for "shallow zooms"), but the performance
-// would still be unacceptably slow for deep zooming (I have coded up a
-// prototype).  The ultimate solution would be to get a *fast* BigDecimal
-// component from a component vendor, and use it instead of java.math.BigDecimal
-// for the DeepZoomCalculator strategy.  Stay tuned...
+// orders of magnitude slower than using doubles.  Instead, the coordinates of
+// the ComplexRectangle are kept as BigDecimals, and once a zoom is too deep
+// for doubles, makeNewCalculator() picks the DoubleDoubleCalculator strategy,
+// which iterates with pairs of doubles, for twice the digits at a few times
+// the cost.  Deeper still, it picks the PerturbationCalculator strategy: it
+// calculates the orbit of just one point with all of the digits it needs, as
+// FixedPoints (a much faster replacement for BigDecimal), and then every
+// pixel with doubles, as a tiny difference from that one orbit.  Past about
+// 1e-300 even those differences are too tiny for doubles, and the width of the
+// drawing is handled as a FloatExp, a double with an exponent of its own.
 
 package fractal;
 
@@ -72,14 +105,23 @@ import java.lang.Thread;
 import java.math.*;
 import java.text.*;
 import java.util.*;
+import java.util.concurrent.*;
 import fractal.utils.*;
 
-public class Fractal extends Applet
+public class Fractal extends Applet implements FractalMediator
 {
   // These defaults can be overridden from the command line or HTML parameters:
   private static int             imageHeight = 470; // default
   private static int             imageWidth = 470; // default
   private static int             numColors = 512; // colors per colormap
+  private static boolean         periodicityChecking = true;
+  private static boolean         subdivision = false;
+  private static boolean         progressiveRefinement = true;
+  private static boolean         lanes = true;
+  private static boolean         seriesApproximation = true;
+  private static boolean         symmetry = true;
+  private static int             probeBudget = 4000000; // iterations
+  private static int             historyBudget = 64; // megabytes
 
   // If this code is run as an Application, main() will set this to true.
   private static boolean         isApplication = false;
@@ -103,6 +145,7 @@ public class Fractal extends Applet
   // These stacks contain Drawing objects:
   private Stack                  nextStack;
   private Stack                  previousStack;
+  private HistoryStore           history; // Keeps the Stacks' memory in check.
 
   // Graphical things (the "View"):
   private ControlPanel           controlPanel;
@@ -114,15 +157,25 @@ public class Fractal extends Applet
                                  new ComplexRectangle( -2.5, 1.5, -2.0, 2.0 );
   private final ComplexRectangle INITIAL_JULIA_RECT =
                                  new ComplexRectangle( -2.0, 2.0, -2.0, 2.0 );
+
+  // Doubles (or DoubleDoubles) are used only while a pixel is at least this
+  // many times as wide as the gap between neighbouring doubles (or
+  // DoubleDoubles), near the drawing's coordinates.
+  private static final double    DEEP_ZOOM_ULPS = 1024.0;
+
+  // The one Thread which runs the calculators, one after another.
+  private static ExecutorService renderer = null;
+
   // Misc...
   private FractalCalculator      calculator;
   private Drawing                currentDrawing;
+  private Drawing                salvage; // What a stopped calculator finished.
   private boolean                drawingNow = false;
   public  final static Font      FONT = new Font( "TimesRoman", Font.BOLD, 16 );
   private HelpDrawing            helpDrawing;
   private boolean                outOfMemory = false;
   private int                    previousIterations = 1;
-  private static double          zoomFactor;
+  private static FloatExp        zoomFactor = new FloatExp( 1.0 );
 
 ////////////////////////////////////////////////////////////////////////////////
 
@@ -133,15 +186,23 @@ public class Fractal extends Applet
 
   protected void adjustZoomFactor( ComplexRectangle cr )
   {
-    zoomFactor = INITIAL_RECT.getWidth() / cr.getWidth();
+    // A FloatExp, since the zoom factor may be too big for a double.
+    zoomFactor = new FloatExp( INITIAL_RECT.getWidth() )
+                 .divide( cr.getFloatExpWidth() );
   }
 
-  protected synchronized void calculatorCallback( boolean success,
-                                                  Drawing newDrawing )
+  public synchronized void calculatorCallback( boolean success,
+                                               Drawing newDrawing )
   {
-    // Called by the Thread that calculates a new fractal.
+    // Called by the Thread that calculates a new fractal.  After a stop,
+    // newDrawing is the salvage, if there is any.
     try
     {
+      if( success || newDrawing != null || outOfMemory )
+      {
+        dropSalvage(); // It has been replaced, or is no longer needed.
+        salvage = ( success || outOfMemory ) ? null : newDrawing;
+      }
       if( success )
       {
         // We need the zoom rect in whatever state it is in right now,
@@ -155,7 +216,15 @@ public class Fractal extends Applet
       }
       else
       {
-        if( outOfMemory )
+        if( outOfMemory && history.spillAll( currentDrawing ) > 0 )
+        {
+          // Moving the history out of memory may be enough to try again.
+          outOfMemory( false );
+          setStatus( " Out of memory!  The history was moved to " +
+                     "temporary files; please try again." );
+          setStatus2( "Out of Memory! " );
+        }
+        else if( outOfMemory )
         {
           setStatus2( "Out of Memory! " );
         }
@@ -163,6 +232,7 @@ public class Fractal extends Applet
         {
           setStatus2( "Stopped. " );
         }
+        drawingCanvas.showPreview( null ); // Show the current drawing again.
       }
     }
     catch( OutOfMemoryError oom )
@@ -179,37 +249,106 @@ public class Fractal extends Applet
       drawingNow = false;
       controlPanel.setState( drawingNow, outOfMemory, hasNext(), hasPrevious());
       calculator = null; // garbage
-      System.gc();
+      history.recycle( currentDrawing ); // Nothing else uses them now.
     }
   }
 
+  public synchronized void calculatorPreview( Image preview )
+  {
+    // Called by the Thread that calculates a new fractal, after each pass
+    // of progressive refinement.  Show the unfinished image right away.
+    drawingCanvas.showPreview( preview );
+  }
+
   public synchronized void destroy()
   {
     // May be called by the Applet's browser or by an application Frame's
     // windowClosing event.
     doStop();  // Stop any calculations in progress.
+    stopRenderer();
     System.out.println( "Fractal destroyed." );
   }
 
-  private boolean detectDeepZoom( Drawing d )
+  private boolean detectDeepZoom( Drawing d, double epsilon )
   {
-    // "Deep Zoom" occurs when the precision provided by the Java type double
-    // runs out of resolution.  The use of BigDecimal is required to fix this.
+    // "Deep Zoom" occurs when the precision of the numbers used for the
+    // calculation runs out of resolution.  epsilon is their relative precision:
+    // the gap between neighbouring numbers near 1, such as Math.ulp( 1.0 ).
+    // The iterations magnify rounding errors, so give up on the numbers well
+    // before the pixels are as small as the numbers' last digits.
     ComplexRectangle cr = d.getComplexRect();
-    double deltaDiv2 = cr.getWidth() / ( (double)( imageWidth ) * 2.0 );
-    String min = "" + ( cr.getRMin() );
-    String minPlus = "" + ( cr.getRMin() + deltaDiv2 );
+    double delta = cr.getWidth() / (double) imageWidth;
+    double biggest = Math.max( Math.max( Math.abs( cr.getRMin() ),
+                                         Math.abs( cr.getRMax() )),
+                               Math.max( Math.abs( cr.getIMin() ),
+                                         Math.abs( cr.getIMax() )));
+    return delta < DEEP_ZOOM_ULPS * epsilon * biggest;
+  }
 
-    if( Double.valueOf( min ).doubleValue() ==
-        Double.valueOf( minPlus ).doubleValue() )
+  private SampleMap mapDrawing( Drawing current, Drawing d )
+  {
+    // Which of the new Drawing's pixels sample the same points as pixels of
+    // the current Drawing (or the salvage)?  Those can be reused, if it kept
+    // its OrbitBuffer.  Returns null if there are none.
+    OrbitBuffer orbits = ( current == null ) ? null : current.getOrbits();
+    if( orbits == null ||
+        orbits.getIterations().getWidth() != imageWidth ||
+        orbits.getIterations().getHeight() != imageHeight ||
+        ( d instanceof JuliaDrawing ) != ( current instanceof JuliaDrawing ))
+    {
+      return null;
+    }
+    if( d instanceof JuliaDrawing )
+    {
+      ComplexPoint p = ((JuliaDrawing) d).getJuliaPoint();
+      ComplexPoint q = ((JuliaDrawing) current).getJuliaPoint();
+      if( p.getReal() != q.getReal() || p.getImaginary() != q.getImaginary() )
+      {
+        return null;
+      }
+    }
+
+    // The TextFields show the corners rounded.  If the new corners are all
+    // within a tenth of a pixel of the current ones, draw exactly the same
+    // rectangle again.
+    ComplexRectangle a = d.getComplexRect();
+    ComplexRectangle b = current.getComplexRect();
+    BigDecimal tolerance = b.getFloatExpWidth()
+                            .divide( 10.0 * imageWidth ).toBigDecimal();
+    if( isClose( a.getBigRMin(), b.getBigRMin(), tolerance ) &&
+        isClose( a.getBigRMax(), b.getBigRMax(), tolerance ) &&
+        isClose( a.getBigIMin(), b.getBigIMin(), tolerance ) &&
+        isClose( a.getBigIMax(), b.getBigIMax(), tolerance ))
     {
-      String deepZoom = "Deep Zoom...  Drawing resolution will be degraded ;-(";
-      setStatus( deepZoom );
-      System.out.println( "" );
-      System.out.println( "Fractal: " + deepZoom );
-      return true;
+      d.setComplexRect( new ComplexRectangle( b ));
     }
-    return false;
+    SampleMap map = new SampleMap( b, d.getComplexRect(),
+                                   imageWidth, imageHeight );
+    return ( map.getCount() > 0 ) ? map : null;
+  }
+
+  private static boolean isClose( BigDecimal a, BigDecimal b,
+                                  BigDecimal tolerance )
+  {
+    return a.subtract( b ).abs().compareTo( tolerance ) <= 0;
+  }
+
+  private boolean detectTinyPixels( Drawing d )
+  {
+    // Are the pixels so small that even the differences between them are too
+    // tiny for doubles?  Then the PerturbationCalculator needs its extended
+    // exponents.
+    FloatExp delta = d.getComplexRect().getFloatExpWidth();
+    delta.divide( (double) imageWidth );
+    return delta.getExponent() < PerturbationCalculator.TINY_EXPONENT;
+  }
+
+  private void reportDeepZoom( String how )
+  {
+    String deepZoom = "Deep Zoom...  Using " + how + ".";
+    setStatus( deepZoom );
+    System.out.println( "" );
+    System.out.println( "Fractal: " + deepZoom );
   }
 
   protected synchronized void doDelete()
@@ -233,6 +372,7 @@ public class Fractal extends Applet
       {
         newCurrentDrawing = ( Drawing ) previousStack.pop();
       }
+      history.forget( currentDrawing );
       setCurrentDrawing( newCurrentDrawing );
       setColor( newCurrentDrawing.getColor() );
       drawingCanvas.redraw( newCurrentDrawing );
@@ -255,7 +395,6 @@ public class Fractal extends Applet
       setStatus( " " );
       controlPanel.setParameterChangeFlag( false );
       controlPanel.setState( drawingNow, outOfMemory, hasNext(), hasPrevious());
-      System.gc();
     }
   }
 
@@ -285,7 +424,8 @@ public class Fractal extends Applet
       if( getNewParameters( newRect, maxIterations, juliaPoint, color ) )
       {
         // Go for it!
-        makeNewFractal( newRect, maxIterations, juliaPoint, color.toString() );
+        makeNewFractal( newRect, maxIterations, juliaPoint, color.toString(),
+                        false );
       }
     }
     catch( OutOfMemoryError oom )
@@ -300,6 +440,63 @@ public class Fractal extends Applet
     }
   }
 
+  protected synchronized void doPan( int dx, int dy )
+  {
+    // Move the view by dx pixels to the right and dy pixels down, keeping
+    // everything else about the current Drawing.  The pixels still in view
+    // are reused (see FractalCalculator.reuse()), so only the newly exposed
+    // strip needs to be calculated.
+    try
+    {
+      setStatus( " " );
+      setStatus2( " " );
+      if( drawingNow || ( dx == 0 && dy == 0 ) ||
+          currentDrawing instanceof HelpDrawing ||
+          controlPanel.isJulia() != ( currentDrawing instanceof JuliaDrawing ))
+      {
+        return;
+      }
+      if( outOfMemory )
+      {
+        outOfMemory( true );
+        return;
+      }
+
+      // Move the corners by exactly a whole number of pixels.
+      ComplexRectangle rect = getCurrentRect();
+      FloatExp delta = rect.getFloatExpWidth().divide( (double) imageWidth );
+      BigDecimal r = new FloatExp( delta ).multiply( dx ).toBigDecimal();
+      BigDecimal i = new FloatExp( delta ).multiply( dy ).toBigDecimal();
+      ComplexRectangle newRect = new ComplexRectangle();
+      newRect.set( rect.getBigRMin().add( r ), rect.getBigRMax().add( r ),
+                   rect.getBigIMin().subtract( i ),
+                   rect.getBigIMax().subtract( i ));
+
+      ComplexPoint juliaPoint = new ComplexPoint();
+      if( currentDrawing instanceof JuliaDrawing )
+      {
+        juliaPoint = ((JuliaDrawing) currentDrawing).getJuliaPoint();
+      }
+      // Only a view which still overlaps the current one keeps its number
+      // of iterations without probing (see maybeGuessMaxIterations()).
+      boolean overlaps = Math.abs( dx ) < imageWidth &&
+                         Math.abs( dy ) < imageHeight;
+      makeNewFractal( newRect,
+                      new IntWrapper( currentDrawing.getMaxIterations() ),
+                      juliaPoint, currentDrawing.getColor(), overlaps );
+    }
+    catch( OutOfMemoryError oom )
+    {
+      outOfMemory( true );
+      calculatorCallback( false, null );
+    }
+    catch( Throwable t )
+    {
+      calculatorCallback( false, null );
+      System.out.println( "Fractal ERROR !!! (pan) ... " + t );
+    }
+  }
+
   protected synchronized void doHelp()
   {
     if( currentDrawing instanceof HelpDrawing )
@@ -399,28 +596,43 @@ public class Fractal extends Applet
     }
   }
 
+  public static String bigDecimalAsString( BigDecimal big )
+  {
+    // The scale is determined by the zoom factor of the current drawing.
+    int scale = getBigDecimalScale();
+    return big.setScale( scale, BigDecimal.ROUND_HALF_UP ).toPlainString();
+  }
+
   public static String doubleAsString( double d )
   {
     // This global method encapsulates a trick to prevent undesirable rounding
     // effects from being noticable to the user.
-    // The scale is determined by the zoom factor of the current drawing.
-    int scale = getBigDecimalScale();
-    BigDecimal big = new BigDecimal( d );
-    return big.setScale( scale, BigDecimal.ROUND_HALF_UP ).toString();
+    return bigDecimalAsString( new BigDecimal( d ));
+  }
+
+  private void dropSalvage()
+  {
+    // The calculator is done, so nothing else is using the salvage.
+    if( salvage != null )
+    {
+      salvage.getOrbits().release();
+    }
+    salvage = null;
   }
 
   protected void expandRectToFitImage( ComplexRectangle complexRect )
   {
     // The complex rectangle must be scaled to fit the pixel image view.
     // Method: compare the width/height ratios of the two rectangles.
+    // The corners are moved exactly; only the differences are FloatExps.
     double imageWHRatio = 1.0;
     double complexWHRatio = 1.0;
-    double iMin = complexRect.getIMin();
-    double iMax = complexRect.getIMax();
-    double rMin = complexRect.getRMin();
-    double rMax = complexRect.getRMax();
-    double complexWidth = rMax - rMin;
-    double complexHeight = iMax - iMin;
+    BigDecimal iMin = complexRect.getBigIMin();
+    BigDecimal iMax = complexRect.getBigIMax();
+    BigDecimal rMin = complexRect.getBigRMin();
+    BigDecimal rMax = complexRect.getBigRMax();
+    FloatExp complexWidth = complexRect.getFloatExpWidth();
+    FloatExp complexHeight = complexRect.getFloatExpHeight();
 
     if( ( imageWidth != 0 ) && ( imageHeight != 0 ) )
     {
@@ -428,9 +640,10 @@ public class Fractal extends Applet
     }
     else return;
 
-    if( ( complexWidth != 0 ) && ( complexHeight != 0 ) )
+    if( ( complexWidth.signum() != 0 ) && ( complexHeight.signum() != 0 ) )
     {
-      complexWHRatio = complexWidth / complexHeight;
+      complexWHRatio =
+        new FloatExp( complexWidth ).divide( complexHeight ).doubleValue();
     }
     else return;
 
@@ -439,18 +652,20 @@ public class Fractal extends Applet
     if( imageWHRatio < complexWHRatio )
     {
       // Expand vertically
-      double newHeight = complexWidth / imageWHRatio;
-      double heightDifference = Math.abs( newHeight - complexHeight );
-      iMin = iMin - heightDifference / 2;
-      iMax = iMax + heightDifference / 2;
+      FloatExp newHeight = complexWidth.divide( imageWHRatio );
+      FloatExp heightDifference = newHeight.subtract( complexHeight ).abs();
+      BigDecimal half = heightDifference.divide( 2.0 ).toBigDecimal();
+      iMin = iMin.subtract( half );
+      iMax = iMax.add( half );
     }
     else
     {
       // Expand horizontally
-      double newWidth = complexHeight * imageWHRatio;
-      double widthDifference = Math.abs( newWidth - complexWidth );
-      rMin = rMin - widthDifference / 2;
-      rMax = rMax + widthDifference / 2;
+      FloatExp newWidth = complexHeight.multiply( imageWHRatio );
+      FloatExp widthDifference = newWidth.subtract( complexWidth ).abs();
+      BigDecimal half = widthDifference.divide( 2.0 ).toBigDecimal();
+      rMin = rMin.subtract( half );
+      rMax = rMax.add( half );
     }
     complexRect.set( rMin, rMax, iMin, iMax );
   }
@@ -466,6 +681,20 @@ public class Fractal extends Applet
     System.out.println( "Image width = " + imageWidth );
     System.out.println( "Image height = " + imageHeight );
     System.out.println( "" + numColors + " different colors per color map." );
+    System.out.println( "Periodicity checking is " +
+                        switchAsString( periodicityChecking ) + "." );
+    System.out.println( "Subdivision is " +
+                        switchAsString( subdivision ) + "." );
+    System.out.println( "Progressive refinement is " +
+                        switchAsString( progressiveRefinement ) + "." );
+    System.out.println( "Lanes are " + switchAsString( lanes ) + "." );
+    System.out.println( "Series approximation is " +
+                        switchAsString( seriesApproximation ) + "." );
+    System.out.println( "Symmetry is " + switchAsString( symmetry ) + "." );
+    System.out.println( "The iterations probe may use " + probeBudget +
+                        " iterations." );
+    System.out.println( "The history may use " + historyBudget +
+                        " megabytes of memory." );
 
     doHelp(); // Show the Help screen immediately.
     doDraw(); // Begin calculating the initial Mandelbrot set.
@@ -487,6 +716,55 @@ public class Fractal extends Applet
     {
       System.out.println( "Fractal Warning: (html) ... " + t );
     }
+
+    // The switches are optional.
+    try
+    {
+      String periodicityString = getParameter( "PeriodicityChecking" );
+      if( periodicityString != null )
+      {
+        periodicityChecking = getSwitch( periodicityString );
+      }
+      String subdivisionString = getParameter( "Subdivision" );
+      if( subdivisionString != null )
+      {
+        subdivision = getSwitch( subdivisionString );
+      }
+      String progressiveString = getParameter( "ProgressiveRefinement" );
+      if( progressiveString != null )
+      {
+        progressiveRefinement = getSwitch( progressiveString );
+      }
+      String lanesString = getParameter( "Lanes" );
+      if( lanesString != null )
+      {
+        lanes = getSwitch( lanesString );
+      }
+      String seriesString = getParameter( "SeriesApproximation" );
+      if( seriesString != null )
+      {
+        seriesApproximation = getSwitch( seriesString );
+      }
+      String symmetryString = getParameter( "Symmetry" );
+      if( symmetryString != null )
+      {
+        symmetry = getSwitch( symmetryString );
+      }
+      String probeString = getParameter( "ProbeBudget" );
+      if( probeString != null )
+      {
+        probeBudget = Integer.valueOf( probeString.trim() ).intValue();
+      }
+      String historyString = getParameter( "HistoryBudget" );
+      if( historyString != null )
+      {
+        historyBudget = Integer.valueOf( historyString.trim() ).intValue();
+      }
+    }
+    catch( Throwable t )
+    {
+      System.out.println( "Fractal Warning: (html switch) ... " + t );
+    }
   }
 
   private static void getApplicationParameters( String[] args )
@@ -512,6 +790,47 @@ public class Fractal extends Applet
           argNum++;
           numColors = Integer.valueOf( args[ argNum++ ].trim() ).intValue();
         }
+        else if( args[ argNum ].equals( "-p" ))
+        {
+          argNum++;
+          periodicityChecking = getSwitch( args[ argNum++ ] );
+        }
+        else if( args[ argNum ].equals( "-s" ))
+        {
+          argNum++;
+          subdivision = getSwitch( args[ argNum++ ] );
+        }
+        else if( args[ argNum ].equals( "-r" ))
+        {
+          argNum++;
+          progressiveRefinement = getSwitch( args[ argNum++ ] );
+        }
+        else if( args[ argNum ].equals( "-l" ))
+        {
+          argNum++;
+          lanes = getSwitch( args[ argNum++ ] );
+        }
+        else if( args[ argNum ].equals( "-a" ))
+        {
+          argNum++;
+          seriesApproximation = getSwitch( args[ argNum++ ] );
+        }
+        else if( args[ argNum ].equals( "-m" ))
+        {
+          argNum++;
+          symmetry = getSwitch( args[ argNum++ ] );
+        }
+        else if( args[ argNum ].equals( "-b" ))
+        {
+          argNum++;
+          probeBudget = Integer.valueOf( args[ argNum++ ].trim() ).intValue();
+        }
+        else if( args[ argNum ].equals( "-k" ))
+        {
+          argNum++;
+          historyBudget =
+            Integer.valueOf( args[ argNum++ ].trim() ).intValue();
+        }
         else
         {
           throw new Exception();
@@ -521,7 +840,9 @@ public class Fractal extends Applet
     catch( Throwable t )
     {
       String usageString = "Fractal Usage: java fractal.Fractal [-w width] " +
-        "[-h height] [-c numColors]";
+        "[-h height] [-c numColors] [-p on|off] [-s on|off] [-r on|off] " +
+        "[-l on|off] [-a on|off] [-m on|off] " +
+        "[-b probeBudget] [-k historyBudget]";
       System.out.println( usageString );
     }
   }
@@ -532,12 +853,12 @@ public class Fractal extends Applet
     // This quantity is directly related to the base 10 log of the zoomFactor.
     // Note: Math.log(x) uses base E (2.71828...) not base 10, so in order to
     // compute a base 10 logarithm, use: Math.log( x ) / Math.log( 10 ).
-    double zoom = getZoomFactor();
-    if( zoom < 1.0 )
+    double logZoom = getLogZoomFactor();
+    if( logZoom < 0.0 )
     {
-      zoom = 1.0; // forces log( zoom ) >= 0
+      logZoom = 0.0; // the zoom factor is less than 1
     }
-    int scale = (int)( Math.log( zoom ) / 2.3 ); // Math.log( 10 ) = 2.3
+    int scale = (int)( logZoom / 2.3 ); // Math.log( 10 ) = 2.3
     return scale + 4;
   }
 
@@ -551,6 +872,36 @@ public class Fractal extends Applet
     return color.toString();
   }
 
+  protected String getColoring()
+  {
+    StringBuffer coloring = new StringBuffer();
+    if( ! controlPanel.getColoring( coloring ) )
+    {
+      return Coloring.LINEAR; // Should never happen.
+    }
+    return coloring.toString();
+  }
+
+  private BigDecimal getBigImaginary( int y )
+  {
+    // The exact imaginary coordinate of row y of the current drawing.
+    // Delta is a FloatExp, since it may be too tiny for a double.
+    ComplexRectangle currentRect = getCurrentRect();
+    FloatExp delta = currentRect.getFloatExpWidth();
+    delta.divide( (double)imageWidth );
+    FloatExp offset = delta.multiply( ((double)imageHeight ) - y );
+    return currentRect.getBigIMin().add( offset.toBigDecimal() );
+  }
+
+  private BigDecimal getBigReal( int x )
+  {
+    // The exact real coordinate of column x of the current drawing.
+    ComplexRectangle currentRect = getCurrentRect();
+    FloatExp delta = currentRect.getFloatExpWidth();
+    delta.divide( (double)imageWidth );
+    return currentRect.getBigRMin().add( delta.multiply( x ).toBigDecimal() );
+  }
+
   private ComplexPoint getComplexPoint( int x, int y )
   {
     ComplexRectangle currentRect = getCurrentRect();
@@ -562,12 +913,12 @@ public class Fractal extends Applet
     return new ComplexPoint( r, i );
   }
 
-  protected Color[] getCurrentColorMap()
+  public Color[] getCurrentColorMap()
   {
     return (Color[]) colorTable.get( getColor() );
   }
 
-  protected Drawing getCurrentDrawing()
+  public Drawing getCurrentDrawing()
   {
     return currentDrawing;
   }
@@ -577,12 +928,12 @@ public class Fractal extends Applet
     return currentDrawing.getComplexRect();
   }
 
-  protected int getImageHeight()
+  public int getImageHeight()
   {
     return imageHeight;
   }
 
-  protected int getImageWidth()
+  public int getImageWidth()
   {
     return imageWidth;
   }
@@ -601,10 +952,9 @@ public class Fractal extends Applet
     int zoomYMin = zoom.getBounds().y;
     int zoomYMax = zoomYMin + zoom.getBounds().height;
 
-    ComplexPoint p1 = getComplexPoint( zoomXMin, zoomYMin );
-    ComplexPoint p2 = getComplexPoint( zoomXMax, zoomYMax );
-
-    newRect.set( p1, p2 );
+    // The corners must be exact, or deep zooms would drift off target.
+    newRect.set( getBigReal( zoomXMin ), getBigReal( zoomXMax ),
+                 getBigImaginary( zoomYMin ), getBigImaginary( zoomYMax ));
   }
 
   private boolean getNewParameters( ComplexRectangle newRect,
@@ -649,6 +999,21 @@ public class Fractal extends Applet
     return controlPanel.getComplexRect( newRect );
   }
 
+  private static boolean getSwitch( String onOff ) throws Exception
+  {
+    // Optimization switches are either "on" or "off".
+    String s = onOff.trim();
+    if( s.equalsIgnoreCase( "on" ))
+    {
+      return true;
+    }
+    if( s.equalsIgnoreCase( "off" ))
+    {
+      return false;
+    }
+    throw new Exception( "Expected on or off: " + s );
+  }
+
   protected String getWelcome()
   {
     String welcome = null;
@@ -663,21 +1028,26 @@ public class Fractal extends Applet
     return welcome;
   }
 
+  protected static double getLogZoomFactor()
+  {
+    return zoomFactor.log();
+  }
+
   protected static double getZoomFactor()
   {
-    return zoomFactor;
+    // Infinity, if the zoom factor is too big for a double.
+    return zoomFactor.doubleValue();
   }
 
   private int guessNewMaxIterations( boolean isJulia )
   {
     // The higher the zoom factor, the more iterations that are needed to see
     // the detail. Guess at a number to produce a cool looking fractal:
-    double zoom = getZoomFactor();
-    if( zoom < 1.0 )
+    double logZoom = getLogZoomFactor();
+    if( logZoom < 0.0 )
     {
-      zoom = 1.0; // forces logZoom >= 0
+      logZoom = 0.0; // the zoom factor is less than 1
     }
-    double logZoom = Math.log( zoom );
     double magnitude = ( logZoom / 2.3 ) - 2.0; // just a guess.
     if( magnitude < 1.0 )
     {
@@ -689,6 +1059,19 @@ public class Fractal extends Applet
     return (int) iterations;
   }
 
+  private int probeNewMaxIterations( Drawing d )
+  {
+    // Sample the new Drawing to see how many iterations it needs.  The deep
+    // zooms can not be sampled with doubles, so make a guess for them.
+    boolean isJulia = d instanceof JuliaDrawing;
+    if( probeBudget <= 0 || detectDeepZoom( d, Math.ulp( 1.0 ) ))
+    {
+      return guessNewMaxIterations( isJulia );
+    }
+    IterationProbe probe = new IterationProbe( this, d, probeBudget );
+    return Math.max( probe.getMaxIterations(), INITIAL_ITERATIONS );
+  }
+
   private boolean hasNewParameters()
   {
     if( drawingCanvas.hasZoom() )
@@ -698,6 +1081,31 @@ public class Fractal extends Applet
     return controlPanel.hasNewParameters();
   }
 
+  public boolean hasLanes()
+  {
+    return lanes;
+  }
+
+  public boolean hasProgressiveRefinement()
+  {
+    return progressiveRefinement;
+  }
+
+  public boolean hasSeriesApproximation()
+  {
+    return seriesApproximation;
+  }
+
+  public boolean hasSymmetry()
+  {
+    return symmetry;
+  }
+
+  public boolean hasPeriodicityChecking()
+  {
+    return periodicityChecking;
+  }
+
   protected boolean hasNext()
   {
     return ( ! nextStack.isEmpty() );
@@ -748,6 +1156,10 @@ public class Fractal extends Applet
   {
     colorTable = new Hashtable();
 
+    // The pixels of the images only have room for so many colors.
+    numColors = Math.max( 1, Math.min( numColors,
+                                       FractalCalculator.MAX_COLORS ));
+
     int red = 255;
     int green = 255;
     int blue = 255;
@@ -921,6 +1333,11 @@ public class Fractal extends Applet
     }
     colorTable.put( COLORS_ZEBRA, colorMap );
     controlPanel.addColor( COLORS_ZEBRA );
+
+    // Each color map may be used with any of the Colorings:
+    controlPanel.addColoring( Coloring.LINEAR );
+    controlPanel.addColoring( Coloring.SMOOTH );
+    controlPanel.addColoring( Coloring.HISTOGRAM );
   }
 
   private void initializeEventListeners()
@@ -953,6 +1370,7 @@ public class Fractal extends Applet
     // Only instances of Drawing are contained in these Stacks.
     previousStack = new Stack();
     nextStack = new Stack();
+    history = new HistoryStore( historyBudget * 1024L * 1024L );
   }
 
   protected void juliaClicked( boolean isJulia )
@@ -995,7 +1413,6 @@ public class Fractal extends Applet
             System.out.println( event );
             applet.destroy();
             event.getWindow().dispose(); // garbage
-            System.gc();
             System.exit( 0 );
           } } );
 
@@ -1022,12 +1439,29 @@ public class Fractal extends Applet
     // Determine which Calculator to use for the new Drawing.
     // Example of the "Strategy" Design Pattern.
     FractalCalculator fc = null;
+    boolean fastColors = useFastColorsCalculator() &&
+                         ! ( getCurrentDrawing() instanceof HelpDrawing );
+    Drawing reused = fastColors ? null : getReusedDrawing( d );
+    SampleMap map = mapDrawing( reused, d );
 
-    if( useFastColorsCalculator() &&
-        ! ( getCurrentDrawing() instanceof HelpDrawing ) )
+    if( fastColors )
     {
       fc = new FastColorsCalculator( this, d );
     }
+    else if( detectDeepZoom( d, DoubleDouble.EPSILON ) )
+    {
+      // Mandelbrot or Julia, too deep even for DoubleDoubles.
+      boolean tiny = detectTinyPixels( d );
+      reportDeepZoom( tiny ? "perturbation theory with extended exponents" :
+                             "perturbation theory" );
+      fc = new PerturbationCalculator( this, d, tiny );
+    }
+    else if( detectDeepZoom( d, Math.ulp( 1.0 ) ) )
+    {
+      // Mandelbrot or Julia, too deep for doubles.
+      reportDeepZoom( "double-double precision" );
+      fc = new DoubleDoubleCalculator( this, d );
+    }
     else if( d instanceof JuliaDrawing )
     {
       fc = new JuliaCalculator( this, d );
@@ -1036,15 +1470,54 @@ public class Fractal extends Applet
     {
       fc = new MandelbrotCalculator( this, d );
     }
+
+    if( map != null && ( fc instanceof MandelbrotCalculator ||
+                         fc instanceof JuliaCalculator ) &&
+        d.getMaxIterations() > reused.getOrbits().getMaxIterations() )
+    {
+      // Decorate the calculator: continue the orbits of the current Drawing
+      // (or the salvage) which ran out of iterations.
+      fc = new ResumeCalculator( this, d, fc );
+    }
+    else if( subdivision && ( fc instanceof MandelbrotCalculator ||
+                              fc instanceof JuliaCalculator ))
+    {
+      // Decorate the calculator: only calculate the borders of rectangles.
+      // (Not the deep zoom calculators: their getReal() and getImaginary() are
+      // not coordinates, and the PerturbationCalculator's glitches must all be
+      // recalculated.)
+      fc = new MarianiSilverCalculator( this, d, fc );
+    }
+
+    if( map != null )
+    {
+      // Copy the pixels already known from the current Drawing (or the
+      // salvage).
+      fc.reuse( reused.getOrbits(), map );
+    }
     return fc;
   }
 
+  private Drawing getReusedDrawing( Drawing d )
+  {
+    // The pixels of the salvage are reused rather than those of the current
+    // Drawing if it overlaps the new Drawing at least as much.
+    SampleMap map = mapDrawing( getCurrentDrawing(), d );
+    SampleMap salvageMap = mapDrawing( salvage, d );
+    if( salvageMap != null &&
+        ( map == null || salvageMap.getCount() >= map.getCount() ))
+    {
+      return salvage;
+    }
+    return getCurrentDrawing();
+  }
+
   private Drawing makeNewDrawing( ComplexRectangle newRect,
                                   IntWrapper maxIterations,
                                   ComplexPoint juliaPoint, String color )
   {
     Drawing drawing = null;
-    Image image = drawingCanvas.createImage( imageWidth, imageHeight );
+    Image image = null; // The calculator supplies the image when it is done.
 
     if( controlPanel.isJulia() && ! ( currentDrawing instanceof JuliaDrawing ) )
     {
@@ -1064,13 +1537,15 @@ public class Fractal extends Applet
       drawing = new Drawing( newRect, maxIterations.getValue(), image,
                              null, color );
     }
+    drawing.setColoring( getColoring() );
     controlPanel.updateDrawing( drawing );
     return drawing;
   }
 
   private void makeNewFractal( ComplexRectangle newRect,
                                IntWrapper maxIterations,
-                               ComplexPoint juliaPoint, String color )
+                               ComplexPoint juliaPoint, String color,
+                               boolean pan )
   {
     drawingNow = true; // We can only calculate one fractal at a time.
 
@@ -1078,31 +1553,60 @@ public class Fractal extends Applet
 
     Drawing newDrawing = makeNewDrawing( newRect, maxIterations,
                                          juliaPoint, color );
+    // Choose maxIterations first: the calculator is made for it.
+    maybeGuessMaxIterations( newDrawing, pan );
     calculator = makeNewCalculator( newDrawing );
 
-    maybeGuessMaxIterations( newDrawing );
-    detectDeepZoom( newDrawing );
-
-    // Spin off a new Thread to do the calculations.
+    // Hand the calculations to the render Thread.
     // Else, the rest of the UI would not work in parallel.
     // The Thread will call calculatorCallback() when done.
     // Various methods have to be 'synchronized' for this to work.
-    Thread t = new Thread( calculator );
-    t.setPriority( Thread.NORM_PRIORITY );
-    t.setName( "Fractal Calculator" );
-    t.start(); // Invokes calculator.run() in another thread.
+    getRenderer().execute( calculator ); // Invokes calculator.run().
 
     // The deeper we zoom, the longer the strings in the TextFields...
     recalculateLayout();
   }
 
-  private void maybeGuessMaxIterations( Drawing d )
+  private static synchronized ExecutorService getRenderer()
+  {
+    if( renderer == null )
+    {
+      renderer = Executors.newSingleThreadExecutor( new ThreadFactory()
+      {
+        public Thread newThread( Runnable r )
+        {
+          Thread t = new Thread( r );
+          t.setPriority( Thread.NORM_PRIORITY );
+          t.setName( "Fractal Calculator" );
+          t.setDaemon( true ); // It waits for work for as long as we run.
+          return t;
+        } } );
+    }
+    return renderer;
+  }
+
+  private static synchronized void stopRenderer()
+  {
+    // Its Thread ends as soon as the calculator in progress (if any) stops.
+    if( renderer != null )
+    {
+      renderer.shutdown();
+      renderer = null;
+    }
+  }
+
+  private void maybeGuessMaxIterations( Drawing d, boolean pan )
   {
     int maxIterations = d.getMaxIterations();
     // If the user did not change the number of iterations, make a guess...
-    if( previousIterations == maxIterations && ! useFastColorsCalculator() )
-    {
-      maxIterations = guessNewMaxIterations( d instanceof JuliaDrawing );
+    // unless the view was only panned (see doPan()), and still overlaps the
+    // current view: that much of it is the same, and so is the number of
+    // iterations it needs.  A new view of the same size elsewhere is probed
+    // like any other.
+    if( previousIterations == maxIterations && ! useFastColorsCalculator() &&
+        ! pan )
+    {
+      maxIterations = probeNewMaxIterations( d );
       if( previousIterations != maxIterations )
       {
         // We have changed the num iterations.
@@ -1114,7 +1618,7 @@ public class Fractal extends Applet
     previousIterations = maxIterations;
   }
 
-  protected void outOfMemory( boolean oom )
+  public void outOfMemory( boolean oom )
   {
     if( oom )
     {
@@ -1123,10 +1627,10 @@ public class Fractal extends Applet
       setStatus2( "Out of memory!" );
       System.out.println( " " );
       System.out.println( oomString );
+      BufferPool.clear(); // Let the garbage collector have the spare buffers.
     }
     outOfMemory = oom;
     controlPanel.setState( drawingNow, oom, hasNext(), hasPrevious() );
-    System.gc();
   }
 
   protected static String pointAsString( ComplexPoint cp )
@@ -1173,6 +1677,7 @@ public class Fractal extends Applet
       if( d instanceof HelpDrawing )
       {
         nextStack.removeElement( d );
+        history.forget( d );
         return;
       }
     }
@@ -1183,6 +1688,7 @@ public class Fractal extends Applet
       if( d instanceof HelpDrawing )
       {
         previousStack.removeElement( d );
+        history.forget( d );
         return;
       }
     }
@@ -1195,6 +1701,11 @@ public class Fractal extends Applet
 
   private void setCurrentDrawing( Drawing d )
   {
+    history.visit( d ); // Read it back from its temporary file, if need be.
+    if( ! drawingNow ) // Otherwise the calculator might still use them.
+    {
+      history.recycle( d );
+    }
     currentDrawing = d;
     previousIterations = d.getMaxIterations();
     controlPanel.updateDrawing( d );
@@ -1216,16 +1727,21 @@ public class Fractal extends Applet
     }
   }
 
-  protected void setStatus( String s )
+  public void setStatus( String s )
   {
     controlPanel.setStatus( s );
   }
 
-  protected void setStatus2( String s )
+  public void setStatus2( String s )
   {
     controlPanel.setStatus2( s );
   }
 
+  private static String switchAsString( boolean on )
+  {
+    return on ? "on" : "off";
+  }
+
   protected void showPoint( int x, int y )
   {
     Drawing d = getCurrentDrawing();
@@ -1273,6 +1789,14 @@ public class Fractal extends Applet
     // then we can simply remap the colors instead of recalculating the fractal.
     if( ! hasNewParameters() )
     {
+      if( currentDrawing != null && currentDrawing.getOrbits() == null &&
+          ! getColoring().equals( currentDrawing.getColoring() ))
+      {
+        // Without its raw numbers of iterations (as when its temporary file
+        // could not be read back; see HistoryStore), a Drawing can only be
+        // given new colors, not a new Coloring.
+        return false;
+      }
       if( controlPanel.isJulia() )
       {
         if( currentDrawing instanceof JuliaDrawing )
@@ -10,86 +10,263 @@
 // for creating a new fractal image is defined in calcFractal(), which uses
 // getColor(), which in turn uses the abstract method testPoint(), which is
 // implemented differently by MandelbrotCalculator and JuliaClaculator.
-// The method getColor() is overriden by FastColorsCalculator.
+// The method calcPixels() is overriden by FastColorsCalculator, and the
+// methods beginPasses() and endPasses() by the PerturbationCalculator.
+//
+// Both the Mandelbrot and the Julia Sets iterate z <= z*z + c; they differ
+// only in where z and c come from, so the iteration itself is done here, in
+// iterate().  Points inside the set may need every one of maxIterations
+// iterations to be recognized as such. With periodicity checking, the orbit
+// is compared against a saved point which is replaced at ever doubling
+// intervals (Brent's cycle detection); once the orbit returns to within a tiny
+// fraction of a pixel of the saved point, it is periodic, and will never
+// escape.
+//
+// Each iteration depends on the result of the one before it, so a processor
+// spends most of its time waiting for its multipliers.  iterateLanes() keeps
+// the processor busy by interleaving the iterations of several independent
+// points (the "lanes"); it gives exactly the same answers as iterate().
+//
+// The image is split into rectangular tiles which are calculated in parallel
+// on every available processor, using a work-stealing ForkJoinPool. Each tile
+// recursively splits itself in half until it is small enough to calculate
+// directly; idle worker Threads steal the halves that are still waiting.
+// Every pixel belongs to exactly one tile, so the tiles never need to
+// synchronize with each other while they call testPoint().
+//
+// Pixels are written straight into the array behind a BufferedImage, rather
+// than through a Graphics object one pixel at a time.  The image is indexed:
+// each pixel holds its colorNumber + 1 (0 is black), and an IndexColorModel
+// made from the color map turns those into colors, so that a new color map
+// only needs a new IndexColorModel (see FastColorsCalculator).  The pixels
+// are bytes when there are few enough colors, and shorts otherwise.  The
+// finished image is handed to the new Drawing only once it is complete.  It
+// is the only copy of the colorNumbers that the Drawing keeps; the
+// colorNumbers below, with their UNKNOWN and other conventions, are only
+// needed while the image is being calculated, and they go back to the
+// BufferPool as soon as it is done.  The image's pixels and the OrbitBuffer
+// come from the BufferPool too; they go back to it once the Drawing is
+// deleted, or moved out of memory (see HistoryStore).
+//
+// With progressive refinement, the image is calculated in several passes:
+// first only every 8th pixel of every 8th row, each one painted as an 8x8
+// block, then every 4th, then every 2nd, then all of the rest. The image is
+// shown on the DrawingCanvas after each pass, so that a rough preview appears
+// almost at once. No pixel is ever calculated twice; colorNumbers holds the
+// value UNKNOWN for each pixel which has not been calculated yet.
+//
+// Besides the colorNumbers, the calculators keep the raw number of iterations
+// of every pixel in an OrbitBuffer, so that the image can be colored again
+// another way (see Coloring) or continued with more iterations (see
+// ResumeCalculator).  testPoint() tells the points which ran out of
+// iterations apart from the points known to be in the set by returning
+// RAN_OUT instead of 0.  testPoints() hands back the last point of each orbit:
+// where it escaped, or where it ran out.  The passes color each pixel LINEAR,
+// and any other Coloring is applied once every pixel is known.
+//
+// A calculator may also be given the OrbitBuffer of a previous Drawing, and a
+// SampleMap of which of its pixels sample the same points as the new ones.
+// Those pixels whose number of iterations is already known are simply copied
+// (see reuse()), and the passes only calculate the rest.
+//
+// Stopping is immediate: the iteration loops themselves check stopRequested
+// every STOP_INTERVAL iterations, so that even a pixel with millions of
+// iterations stops at once.  The results of points which were being tested
+// when a stop was requested are thrown away, so every pixel whose number of
+// iterations is known in the OrbitBuffer is finished.  After a stop,
+// getSalvage() hands those back to the Fractal, which reuses them for the next
+// Drawing wherever the two overlap, as it does the current Drawing's.  The
+// unfinished image was only ever a preview; its pixels go back to the
+// BufferPool (see releaseImage()).
+//
+// The Mandelbrot Set is symmetric about the real axis, and every Julia Set is
+// symmetric through the origin.  When the image straddles the axis (or the
+// origin), getMirror() maps each pixel onto its mirror image.  The pixels
+// below the axis whose mirror image is in the image are marked MIRRORED, and
+// copied from their mirror images instead of being calculated.
 
 package fractal;
 
 import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import fractal.utils.*;
 
 abstract class FractalCalculator implements Runnable
 {
   protected Color[]           colorMap;
-  protected int[][]           colorNumbers;
+  protected Coloring          coloring;
+  protected IterationBuffer   colorNumbers;
+  protected OrbitBuffer       orbits; // null unless it can be continued.
+  protected OrbitBuffer       previous; // null unless pixels are reused.
+  protected SampleMap         previousMap;
+  protected SampleMap         mirror; // null unless the image is symmetric.
   protected double            delta;
-  protected Fractal           fractal;
-  protected Image             image;
+  protected FractalMediator   fractal;
+  protected BufferedImage     image;
   protected double            iRangeMax;
   protected double            iRangeMin;
   protected int               maxIterations;
   protected Drawing           newDrawing;
   protected ComplexRectangle  newRect;
   protected int               numColors;
+  protected boolean           lanes;
+  protected boolean           progressive;
+  protected boolean           periodicityChecking;
+  protected boolean           symmetry;
+  protected double            periodicityTolerance;
   protected int               imageHeight;
   protected int               imageWidth;
+  protected DataBuffer        pixels; // The image's data (see getPixel()).
   protected double            rRangeMax;
   protected double            rRangeMin;
-  protected boolean           stopRequested;
+  protected IndexColorModel   colorModel; // The colorMap, and black.
+  protected RenderStats       stats;
+  protected int               step; // The spacing of this pass' pixels.
+  protected volatile boolean  stopRequested;
+  private AtomicInteger       pixelsDone;
+  private int                 totalPixels;
+
+  // By convention, a colorNumber of -1 indicates black; its pixel is 0.
+  protected static final int  BLACK = 0;
+
+  // By convention, a colorNumber of -2 has not been calculated yet.
+  protected static final int  UNKNOWN = -2;
+
+  // testPoint() returns this for a point which had not escaped by the time
+  // maxIterations ran out, but which is not known to be in the set either.
+  // It is colored black, the same as 0.
+  protected static final int  RAN_OUT = -4;
+
+  // By convention, a colorNumber of -5 is to be copied from its mirror image.
+  protected static final int  MIRRORED = -5;
+
+  // The most colors a color map may have: the pixels are 16 bits, and one of
+  // their values is black.
+  protected static final int  MAX_COLORS = 65535;
+
+  // The iteration loops check stopRequested every this many iterations.  It
+  // must be a power of 2.
+  protected static final int  STOP_INTERVAL = 4096;
+
+  // The number of points which iterateLanes() iterates at once.
+  protected static final int  LANES = 4;
+
+  // The spacing of the pixels in the first pass of progressive refinement.
+  // Tiles are always split on a multiple of this, so that the blocks drawn
+  // for one tile's pixels never overlap another tile.
+  protected static final int  FIRST_STEP = 8;
+
+  // Tiles no larger than this (in pixels) are calculated by a single Thread.
+  private static final int    TILE_PIXELS = 64 * 64;
+
+  // One pool of worker Threads, sized to the machine, is shared by all
+  // calculators. Only one fractal is ever calculated at a time.
+  private static ForkJoinPool pool = null;
 
-  protected FractalCalculator( Fractal fractal, Drawing newDrawing )
+  protected FractalCalculator( FractalMediator fractal, Drawing newDrawing )
   {
     this.fractal    = fractal;
     this.newDrawing = newDrawing;
-    image           = newDrawing.getImage();
+    image           = null; // set this up later.
     maxIterations   = newDrawing.getMaxIterations();
     newRect         = newDrawing.getComplexRect();
     imageWidth      = fractal.getImageWidth();
     imageHeight     = fractal.getImageHeight();
     colorMap        = fractal.getCurrentColorMap();
     numColors       = colorMap.length;
+    colorModel      = getColorModel( colorMap );
+    coloring        = new Coloring( newDrawing.getColoring(), numColors,
+                                    maxIterations );
     rRangeMin       = newRect.getRMin();
     rRangeMax       = newRect.getRMax();
     iRangeMin       = newRect.getIMin();
     iRangeMax       = newRect.getIMax();
-    delta           = (rRangeMax - rRangeMin) / (double) imageWidth;
+    delta           = newRect.getWidth() / (double) imageWidth;
+    lanes           = fractal.hasLanes();
+    progressive     = fractal.hasProgressiveRefinement();
+    periodicityChecking = fractal.hasPeriodicityChecking();
+    symmetry        = fractal.hasSymmetry();
+    periodicityTolerance = delta / 1024.0; // A small fraction of a pixel.
     colorNumbers    = null; // set this up later.
+    previous        = null;
+    previousMap     = null;
+    mirror          = null; // set this up later.
     stopRequested   = false;
+    pixelsDone      = new AtomicInteger( 0 );
+    stats           = new RenderStats();
   }
 
   private boolean calcFractal()
   {
     // Assign a color to every pixel ( x , y ) in the Image, corresponding to
     // one point, z, in the imaginary plane ( zr, zi ).
-    Graphics imageGraphics = null;
     try
     {
       colorNumbers = getColorNumbers();
+      orbits = getOrbits();
+      image = newImage();
+      pixels = image.getRaster().getDataBuffer();
       fractal.setStatus2( " 0% Complete." );
 
-      // Get the Graphics object for the Image. This is necessary
-      // for "double buffering" of the calculated image.
-      imageGraphics = image.getGraphics();
-      imageGraphics.setPaintMode();
+      step = progressive ? FIRST_STEP : 1;
+      totalPixels = 0;
+      for( int s = step; s >= 1; s /= 2 )
+      {
+        totalPixels += imageWidth * imageHeight / ( s * s );
+      }
 
-      // For each pixel...
-      int loopCounter = 0;
-      for( int x = 0; x < imageWidth; x++ )
+      reusePixels();
+      mirror = symmetry ? getMirror() : null;
+      if( mirror != null )
+      {
+        markMirroredPixels();
+      }
+      if( ! beginPasses() )
       {
-        for( int y = 0; y < imageHeight; y++ )
+        return false; // stop was requested.
+      }
+      for( ; step >= 1; step /= 2 )
+      {
+        if( ! calcPass() )
         {
-          Color c = getColor( x, y );
-
-          imageGraphics.setColor( c );
-          imageGraphics.drawLine( x, y, x, y );
-
-          if( ! maybeYieldOrStop( ++loopCounter ) )
-          {
-            return false; // stop was requested.
-          }
+          return false; // stop was requested.
+        }
+        if( mirror != null )
+        {
+          mirrorPixels( false );
         }
-        fractal.setStatus2( " " + 100 * x / imageWidth + "% Complete." );
+        if( step > 1 )
+        {
+          fractal.calculatorPreview( image );
+        }
+      }
+      step = 1;
+      if( ! endPasses() )
+      {
+        return false; // stop was requested.
       }
-      newDrawing.setColorNumbers( colorNumbers );
+      if( mirror != null )
+      {
+        mirrorPixels( true );
+      }
+      if( isRecolored() )
+      {
+        recolorPixels();
+      }
+      else if( previous != null && progressive )
+      {
+        // The blocks painted by the early passes may have covered some of
+        // the reused pixels; paint every pixel again.
+        int[] colors = colorNumbers.getData();
+        for( int p = 0; p < colors.length; p++ )
+        {
+          pixels.setElem( p, getPixel( colors[ p ] ));
+        }
+      }
+      newDrawing.setOrbits( orbits );
+      newDrawing.setImage( image ); // Publish the finished image.
       fractal.setStatus2( " 100% Complete." );
       return true;
     }
@@ -105,45 +282,425 @@ abstract class FractalCalculator implements Runnable
     }
     finally
     {
-      if( imageGraphics != null )
+      if( colorNumbers != null )
+      {
+        colorNumbers.release();
+        colorNumbers = null;
+      }
+    }
+  }
+
+  protected boolean beginPasses()
+  {
+    // Called before the first pass.  Return false to stop.
+    return ! stopRequested;
+  }
+
+  protected void releaseImage()
+  {
+    // Give the pixels of an unfinished image back to the BufferPool.  A
+    // finished image belongs to the new Drawing.
+    if( image != null && newDrawing.getImage() != image )
+    {
+      BufferPool.release( image.getRaster().getDataBuffer() );
+    }
+    image = null;
+    pixels = null;
+  }
+
+  protected void reuse( OrbitBuffer previous, SampleMap previousMap )
+  {
+    // Copy the pixels which sample the same points as those of a previous
+    // Drawing, wherever their number of iterations is already known.
+    this.previous = previous;
+    this.previousMap = previousMap;
+  }
+
+  private void reusePixels()
+  {
+    // Color in the reused pixels before the first pass, so that the passes
+    // skip them.
+    if( previous == null )
+    {
+      return;
+    }
+    IterationBuffer known = previous.getIterations();
+    int previousIterations = previous.getMaxIterations();
+    for( int y = 0; y < imageHeight; y++ )
+    {
+      int offset = y * imageWidth;
+      int py = previousMap.getRow( y );
+      for( int x = 0; x < imageWidth && py >= 0; x++ )
+      {
+        int px = previousMap.getColumn( x );
+        if( px < 0 )
+        {
+          continue;
+        }
+        int numIterations = known.get( px, py );
+        if( numIterations == UNKNOWN ||
+            numIterations > maxIterations ||
+            ( numIterations == RAN_OUT && previousIterations < maxIterations ))
+        {
+          continue; // It needs to be calculated.
+        }
+        stats.countKnownPoint();
+        pixels.setElem( offset + x, colorPixel( x, y, numIterations ));
+        if( orbits != null )
+        {
+          orbits.setFraction( x, y, previous.getFraction( px, py ));
+        }
+        if( numIterations == RAN_OUT && previousIterations == maxIterations &&
+            orbits != null && previous.hasLastPoint( px, py ))
+        {
+          orbits.setLastPoint( x, y, previous.getLastReal( px, py ),
+                               previous.getLastImaginary( px, py ));
+        }
+      }
+    }
+  }
+
+  protected SampleMap getMirror()
+  {
+    // The calculators of symmetric sets return a SampleMap of each pixel onto
+    // its mirror image.
+    return null;
+  }
+
+  private boolean isMirrored( int x, int y )
+  {
+    // Is the pixel to be copied from its mirror image?  Only the pixels below
+    // the axis of symmetry are; their mirror images are above it.
+    int row = mirror.getRow( y );
+    return row >= 0 && row < y && mirror.getColumn( x ) >= 0;
+  }
+
+  private void markMirroredPixels()
+  {
+    // Mark the pixels which are to be copied, so that the passes skip them.
+    int count = 0;
+    for( int y = 0; y < imageHeight; y++ )
+    {
+      for( int x = 0; x < imageWidth; x++ )
+      {
+        if( isMirrored( x, y ) && colorNumbers.get( x, y ) == UNKNOWN )
+        {
+          colorNumbers.set( x, y, MIRRORED );
+          count++;
+        }
+      }
+    }
+    stats.countMirroredPoints( count );
+  }
+
+  private void mirrorPixels( boolean done )
+  {
+    // Copy each MIRRORED pixel from its mirror image.  Until the last pass is
+    // done, only the image is copied, to show the preview.  A copied pixel
+    // has no last point of its own; if it runs out of iterations again, it
+    // is either mirrored again or calculated from the beginning.
+    for( int y = 0; y < imageHeight; y++ )
+    {
+      int offset = y * imageWidth;
+      int row = mirror.getRow( y );
+      for( int x = 0; x < imageWidth; x++ )
+      {
+        if( ! isMirrored( x, y ) )
+        {
+          continue;
+        }
+        int column = mirror.getColumn( x );
+        if( ! done )
+        {
+          pixels.setElem( offset + x,
+                          pixels.getElem( row * imageWidth + column ));
+          continue;
+        }
+        if( colorNumbers.get( x, y ) == MIRRORED )
+        {
+          colorNumbers.set( x, y, colorNumbers.get( column, row ));
+          if( orbits != null )
+          {
+            IterationBuffer iterations = orbits.getIterations();
+            iterations.set( x, y, iterations.get( column, row ));
+            orbits.setFraction( x, y, orbits.getFraction( column, row ));
+          }
+        }
+        pixels.setElem( offset + x, getPixel( colorNumbers.get( x, y )));
+      }
+    }
+  }
+
+  protected boolean isRecolored()
+  {
+    // Is every pixel colored again once all of them are known?  The passes
+    // only color LINEAR.
+    return orbits != null && ! coloring.isLinear();
+  }
+
+  private void recolorPixels()
+  {
+    // Color every pixel again, from its raw number of iterations.
+    coloring.countHistogram( orbits.getIterations() );
+    int[] colors = colorNumbers.getData();
+    for( int y = 0; y < imageHeight; y++ )
+    {
+      int offset = y * imageWidth;
+      for( int x = 0; x < imageWidth; x++ )
+      {
+        colors[ offset + x ] = getColorNumber( x, y, colors[ offset + x ] );
+        pixels.setElem( offset + x, getPixel( colors[ offset + x ] ));
+      }
+    }
+  }
+
+  protected int getColorNumber( int x, int y, int colorNum )
+  {
+    // The colorNumber of the pixel, as colored by the Coloring, if its raw
+    // number of iterations is known; else the given colorNum.
+    int numIterations = orbits.getIterations().get( x, y );
+    if( numIterations == UNKNOWN )
+    {
+      return colorNum;
+    }
+    return coloring.getColorNumber( numIterations,
+                                    orbits.getFraction( x, y ));
+  }
+
+  protected boolean calcPass()
+  {
+    // Calculate all of the tiles, in parallel, and wait for them to finish.
+    getPool().invoke( new TileTask( 0, 0, imageWidth, imageHeight ) );
+    return ! stopRequested;
+  }
+
+  private boolean calcTile( int xMin, int yMin, int width, int height )
+  {
+    // Called by one of the pool's worker Threads.
+    if( ! calcPixels( xMin, yMin, width, height ))
+    {
+      return false; // stop was requested.
+    }
+    updateProgress( width * height / ( step * step ));
+    return true;
+  }
+
+  protected boolean calcPixels( int xMin, int yMin, int width, int height )
+  {
+    // Calculate this pass' pixels of one tile.  No locking is needed; no other
+    // tile writes to these pixels.  Overridden by the MarianiSilverCalculator.
+    // The points are tested in batches of LANES points from the same row.
+    int batchSize = lanes ? LANES : 1;
+    int[] batchX = new int[ LANES ];
+    double[] batchR = new double[ LANES ];
+    double[] batchI = new double[ LANES ];
+    int[] results = new int[ LANES ];
+    int loopCounter = 0;
+    int yFirst = ( yMin + step - 1 ) / step * step;
+    int xFirst = ( xMin + step - 1 ) / step * step;
+    for( int y = yFirst; y < yMin + height; y += step )
+    {
+      double zI = getImaginary( y );
+      int n = 0;
+      for( int x = xFirst; x < xMin + width || n > 0; x += step )
+      {
+        if( x < xMin + width )
+        {
+          if( colorNumbers.get( x, y ) != UNKNOWN )
+          {
+            continue; // Calculated by an earlier pass.
+          }
+          batchX[ n ] = x;
+          batchR[ n ] = getReal( x );
+          batchI[ n ] = zI;
+          n++;
+          if( n < batchSize )
+          {
+            continue; // Wait for a full batch, or the end of the row.
+          }
+        }
+
+        testPoints( batchR, batchI, results, n );
+        if( stopRequested )
+        {
+          return false; // The results may be unfinished; throw them away.
+        }
+        for( int lane = 0; lane < n; lane++ )
+        {
+          int c = colorResult( batchX[ lane ], y, results[ lane ],
+                               batchR[ lane ], batchI[ lane ] );
+          fillBlock( batchX[ lane ], y, step, step, c );
+
+          if( ! maybeYieldOrStop( ++loopCounter ) )
+          {
+            return false; // stop was requested.
+          }
+        }
+        n = 0;
+      }
+    }
+    return true;
+  }
+
+  protected boolean endPasses()
+  {
+    // Called after the last pass, to calculate any pixels which are still
+    // UNKNOWN, with step = 1.  Return false to stop.
+    return true;
+  }
+
+  protected void fillBlock( int xMin, int yMin, int width, int height, int c )
+  {
+    // Paint a block of pixels, clipped to the image, all in one color.
+    int xMax = Math.min( xMin + width, imageWidth );
+    int yMax = Math.min( yMin + height, imageHeight );
+    for( int y = yMin; y < yMax; y++ )
+    {
+      int offset = y * imageWidth;
+      for( int x = xMin; x < xMax; x++ )
       {
-        imageGraphics.dispose(); // garbage.
+        pixels.setElem( offset + x, c );
       }
     }
   }
 
-  protected Color getColor( int x, int y )
+  protected static IndexColorModel getColorModel( Color[] colorMap )
+  {
+    // Pixel 0 is black, and pixel colorNum + 1 is colorMap[ colorNum ].  The
+    // pixels are bytes if they can be.
+    int[] rgbs = new int[ colorMap.length + 1 ];
+    rgbs[ 0 ] = Color.black.getRGB();
+    for( int colorNum = 0; colorNum < colorMap.length; colorNum++ )
+    {
+      rgbs[ colorNum + 1 ] = colorMap[ colorNum ].getRGB();
+    }
+    if( rgbs.length <= 256 )
+    {
+      return new IndexColorModel( 8, rgbs.length, rgbs, 0, false, -1,
+                                  DataBuffer.TYPE_BYTE );
+    }
+    return new IndexColorModel( 16, rgbs.length, rgbs, 0, false, -1,
+                                DataBuffer.TYPE_USHORT );
+  }
+
+  protected BufferedImage newImage()
+  {
+    // A blank image, colored by the colorModel.
+    WritableRaster raster = BufferPool.getRaster(
+      colorModel.getTransferType(), imageWidth, imageHeight );
+    return new BufferedImage( colorModel, raster, false, null );
+  }
+
+  protected int getPixel( int colorNum )
   {
-    Color c = Color.black;
-    colorNumbers[ x ][ y ] = -1; // -1 indicates black.
-    double zR = rRangeMin + ((double) x ) * delta;
-    double zI = iRangeMin + ((double)( imageHeight - y )) * delta;
+    // Returns the pixel value for a colorNumber.
+    return colorNum + 1;
+  }
 
-    // Is the point inside the set?
-    int numIterations = testPoint( zR, zI, maxIterations );
-    
-    if( numIterations != 0 )
+  protected int getColor( int x, int y )
+  {
+    // Returns the pixel value of the pixel.
+    // Is the point inside the set?  testPoints() also hands back the last
+    // point of its orbit.
+    double[] r = new double[ LANES ];
+    double[] i = new double[ LANES ];
+    int[] results = new int[ LANES ];
+    r[ 0 ] = getReal( x );
+    i[ 0 ] = getImaginary( y );
+    testPoints( r, i, results, 1 );
+    if( stopRequested )
     {
-       // The point is outside the set. It gets a color based on the number
-       // of iterations it took to know this.
-       int colorNum = (int)((float) numColors * ( 1.0 -
-                     (float) numIterations / (float) maxIterations ));
-       colorNum = (colorNum == numColors) ? 0 : colorNum;
+      return BLACK; // The result may be unfinished; the pixel stays UNKNOWN.
+    }
+    return colorResult( x, y, results[ 0 ], r[ 0 ], i[ 0 ] );
+  }
 
-       // Save this information, to the slight detriment of this calculator's
-       // speed, in order to greatly increase the performance for creating
-       // future Drawings, when only the color scheme has been changed.
-       colorNumbers[ x ][ y ] = colorNum;
-       c = colorMap[ colorNum ];
+  private int colorResult( int x, int y, int numIterations,
+                           double lastR, double lastI )
+  {
+    // Returns the pixel value for the result of testPoints(), keeping
+    // the last point of the orbit, if it is known.
+    if( orbits != null && ! Double.isNaN( lastR ))
+    {
+      if( numIterations == RAN_OUT )
+      {
+        orbits.setLastPoint( x, y, lastR, lastI );
+      }
+      else if( numIterations > 0 )
+      {
+        orbits.setEscapePoint( x, y, lastR, lastI );
+      }
     }
-    return c;
+    return colorPixel( x, y, numIterations );
   }
 
-  protected int[][] getColorNumbers()
+  protected int colorPixel( int x, int y, int numIterations )
   {
-    // Beware: out of memory!  Save the colorNumber data with the drawing
-    // in order to be able to use the FastColorsCalculator later on.
-    return new int[ imageWidth ][ imageHeight ];
+    // Returns the pixel value for the result of testPoint().
+    if( orbits != null )
+    {
+      orbits.getIterations().set( x, y, numIterations );
+    }
+    // A point outside the set gets a color based on the number of
+    // iterations it took to know this; -1 indicates black.
+    int colorNum = coloring.getColorNumber( numIterations, 1.0f );
+
+    // Save this information, to the slight detriment of this calculator's
+    // speed, in order to greatly increase the performance for creating
+    // future Drawings, when only the color scheme has been changed.
+    colorNumbers.set( x, y, colorNum );
+    return getPixel( colorNum );
+  }
+
+  protected IterationBuffer getColorNumbers()
+  {
+    // The colorNumbers of the pixels calculated so far; the finished Drawing
+    // keeps them in its image.
+    IterationBuffer buffer = new IterationBuffer( imageWidth, imageHeight );
+    buffer.fill( UNKNOWN );
+    return buffer;
+  }
+
+  protected OrbitBuffer getOrbits()
+  {
+    OrbitBuffer buffer = new OrbitBuffer( imageWidth, imageHeight,
+                                          maxIterations );
+    buffer.getIterations().fill( UNKNOWN );
+    return buffer;
+  }
+
+  protected Drawing getSalvage()
+  {
+    // After a stop, the new Drawing with the OrbitBuffer of the pixels
+    // finished so far; all of the others are UNKNOWN.  Returns null if there
+    // is nothing to salvage.
+    if( ! stopRequested || orbits == null )
+    {
+      return null;
+    }
+    newDrawing.setOrbits( orbits );
+    return newDrawing;
+  }
+
+  protected double getImaginary( int y )
+  {
+    // The imaginary coordinate of the pixels in row y.
+    return iRangeMin + ((double)( imageHeight - y )) * delta;
+  }
+
+  protected double getReal( int x )
+  {
+    // The real coordinate of the pixels in column x.
+    return rRangeMin + ((double) x ) * delta;
+  }
+
+  private static synchronized ForkJoinPool getPool()
+  {
+    if( pool == null )
+    {
+      pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+    }
+    return pool;
   }
 
   protected String getConsoleOutputString()
@@ -151,6 +708,183 @@ abstract class FractalCalculator implements Runnable
     return new String( "Calculating new fractal." );
   }
 
+  protected int iterate( double cR, double cI, double zR, double zI,
+                         int maxIterations )
+  {
+    // Iterate z <= z*z + c, starting with the given z, until |z| >= 2.
+    // Return the number of iterations if that happens, 0 if the orbit is
+    // found to be periodic, or else RAN_OUT.
+    // The saved point for periodicity checking:
+    double savedR = zR;
+    double savedI = zI;
+    int savedInterval = 8;
+    int nextSave = savedInterval;
+
+    for( int i = 1; i <= maxIterations; i++ )
+    {
+       if( ( i & ( STOP_INTERVAL - 1 )) == 0 && stopRequested )
+       {
+          return RAN_OUT; // It will not be used.
+       }
+
+       // To square a complex number: (a+bi)(a+bi) = a*a - b*b + 2abi
+       double zROld = zR;
+       zR = zR * zR - zI * zI + cR;
+       zI = 2 * zROld * zI + cI;
+
+       // We know that if the distance from z to the origin is >= 2
+       // then the point is out of the set.  To avoid a square root,
+       // we'll instead check if the distance squared >= 4.
+       double distSquared = zR * zR + zI * zI;
+       if( distSquared >= 4 )
+       {
+          return i;
+       }
+
+       if( periodicityChecking )
+       {
+          if( Math.abs( zR - savedR ) < periodicityTolerance &&
+              Math.abs( zI - savedI ) < periodicityTolerance )
+          {
+             stats.countPeriodicPoint();
+             return 0; // The orbit is periodic.
+          }
+          if( i == nextSave )
+          {
+             savedR = zR;
+             savedI = zI;
+             savedInterval *= 2;
+             nextSave = i + savedInterval;
+          }
+       }
+    }
+    return RAN_OUT;
+  }
+
+  protected void iterateLanes( double[] cR, double[] cI,
+                               double[] zR, double[] zI,
+                               int[] results, int n, int maxIterations )
+  {
+    // The same as iterate(), for LANES (4) points at once.  Lanes with a
+    // result >= 0 are already finished; the rest get their result here.
+    // Only the first n lanes hold points; the others are filled in with
+    // copies of the first, which are finished from the start.  On return,
+    // zR and zI hold the last points of the orbits: where they escaped, or
+    // where they ran out.
+    // The lanes are unrolled by hand into local variables, so that the
+    // Virtual Machine can keep them all in registers.  As a loop over arrays
+    // of lanes, the orbits went through memory on every iteration, and whole
+    // drawings took almost twice as long.  This is the only copy of the
+    // kernel; the other calculators, and the IterationProbe, all call it.
+    for( int lane = n; lane < LANES; lane++ )
+    {
+      cR[ lane ] = cR[ 0 ];
+      cI[ lane ] = cI[ 0 ];
+      zR[ lane ] = zR[ 0 ];
+      zI[ lane ] = zI[ 0 ];
+      results[ lane ] = 0;
+    }
+    double c0 = cR[ 0 ], c1 = cR[ 1 ], c2 = cR[ 2 ], c3 = cR[ 3 ];
+    double d0 = cI[ 0 ], d1 = cI[ 1 ], d2 = cI[ 2 ], d3 = cI[ 3 ];
+    double r0 = zR[ 0 ], r1 = zR[ 1 ], r2 = zR[ 2 ], r3 = zR[ 3 ];
+    double i0 = zI[ 0 ], i1 = zI[ 1 ], i2 = zI[ 2 ], i3 = zI[ 3 ];
+    int n0 = results[ 0 ], n1 = results[ 1 ];
+    int n2 = results[ 2 ], n3 = results[ 3 ];
+
+    // The saved points for periodicity checking:
+    double sR0 = r0, sR1 = r1, sR2 = r2, sR3 = r3;
+    double sI0 = i0, sI1 = i1, sI2 = i2, sI3 = i3;
+
+    // The escape points:
+    double eR0 = r0, eR1 = r1, eR2 = r2, eR3 = r3;
+    double eI0 = i0, eI1 = i1, eI2 = i2, eI3 = i3;
+    int savedInterval = 8;
+    int nextSave = savedInterval;
+    double tolerance = periodicityChecking ? periodicityTolerance : -1.0;
+
+    for( int i = 1; i <= maxIterations; i++ )
+    {
+      double t;
+      t = r0; r0 = r0 * r0 - i0 * i0 + c0; i0 = 2 * t * i0 + d0;
+      t = r1; r1 = r1 * r1 - i1 * i1 + c1; i1 = 2 * t * i1 + d1;
+      t = r2; r2 = r2 * r2 - i2 * i2 + c2; i2 = 2 * t * i2 + d2;
+      t = r3; r3 = r3 * r3 - i3 * i3 + c3; i3 = 2 * t * i3 + d3;
+
+      if( n0 < 0 )
+      {
+        if( r0 * r0 + i0 * i0 >= 4 )
+        {
+          n0 = i; eR0 = r0; eI0 = i0;
+        }
+        else if( Math.abs( r0 - sR0 ) < tolerance &&
+                 Math.abs( i0 - sI0 ) < tolerance ) n0 = 0;
+      }
+      if( n1 < 0 )
+      {
+        if( r1 * r1 + i1 * i1 >= 4 )
+        {
+          n1 = i; eR1 = r1; eI1 = i1;
+        }
+        else if( Math.abs( r1 - sR1 ) < tolerance &&
+                 Math.abs( i1 - sI1 ) < tolerance ) n1 = 0;
+      }
+      if( n2 < 0 )
+      {
+        if( r2 * r2 + i2 * i2 >= 4 )
+        {
+          n2 = i; eR2 = r2; eI2 = i2;
+        }
+        else if( Math.abs( r2 - sR2 ) < tolerance &&
+                 Math.abs( i2 - sI2 ) < tolerance ) n2 = 0;
+      }
+      if( n3 < 0 )
+      {
+        if( r3 * r3 + i3 * i3 >= 4 )
+        {
+          n3 = i; eR3 = r3; eI3 = i3;
+        }
+        else if( Math.abs( r3 - sR3 ) < tolerance &&
+                 Math.abs( i3 - sI3 ) < tolerance ) n3 = 0;
+      }
+      if( n0 >= 0 && n1 >= 0 && n2 >= 0 && n3 >= 0 )
+      {
+        break; // All lanes are finished.
+      }
+      if( ( i & ( STOP_INTERVAL - 1 )) == 0 && stopRequested )
+      {
+        break; // The results will not be used.
+      }
+
+      if( i == nextSave )
+      {
+        sR0 = r0; sR1 = r1; sR2 = r2; sR3 = r3;
+        sI0 = i0; sI1 = i1; sI2 = i2; sI3 = i3;
+        savedInterval *= 2;
+        nextSave = i + savedInterval;
+      }
+    }
+
+    zR[ 0 ] = ( n0 > 0 ) ? eR0 : r0; zI[ 0 ] = ( n0 > 0 ) ? eI0 : i0;
+    zR[ 1 ] = ( n1 > 0 ) ? eR1 : r1; zI[ 1 ] = ( n1 > 0 ) ? eI1 : i1;
+    zR[ 2 ] = ( n2 > 0 ) ? eR2 : r2; zI[ 2 ] = ( n2 > 0 ) ? eI2 : i2;
+    zR[ 3 ] = ( n3 > 0 ) ? eR3 : r3; zI[ 3 ] = ( n3 > 0 ) ? eI3 : i3;
+    results[ 0 ] = finishLane( results[ 0 ], n0 );
+    results[ 1 ] = ( n > 1 ) ? finishLane( results[ 1 ], n1 ) : 0;
+    results[ 2 ] = ( n > 2 ) ? finishLane( results[ 2 ], n2 ) : 0;
+    results[ 3 ] = ( n > 3 ) ? finishLane( results[ 3 ], n3 ) : 0;
+  }
+
+  private int finishLane( int before, int after )
+  {
+    // Count the work done in one lane of iterateLanes().
+    stats.countPointTested();
+    if( before < 0 && after == 0 )
+    {
+      stats.countPeriodicPoint();
+    }
+    return ( after < 0 ) ? RAN_OUT : after;
+  }
+
   protected boolean maybeYieldOrStop( int loopCounter )
   {
     // Improve the response time for the UI (to the slight detriment of this
@@ -170,26 +904,27 @@ abstract class FractalCalculator implements Runnable
 
   public void run()
   {
-    // This is the entry point for the new Thread, called after
-    // the parent Thread calls Thread.start().
+    // This is the entry point for the Fractal's render Thread, which runs
+    // one calculator after another.
     try
     {
       System.out.println( " " );
       System.out.println( "Starting new drawing: " );
-      System.out.println( "Zoom factor: " + (long)fractal.getZoomFactor() );
+      System.out.println( "Zoom factor: " + (long)Fractal.getZoomFactor() );
       newDrawing.dump();
       System.out.println( getConsoleOutputString() );
 
       if( calcFractal() )
       {
         System.out.println( "Drawing completed." );
+        stats.dump();
         fractal.calculatorCallback( true, newDrawing );
       }
       else
       {
         // Drawing stopped for some reason or another.
         System.out.println( "Drawing stopped." );
-        fractal.calculatorCallback( false, null );
+        fractal.calculatorCallback( false, getSalvage() );
       }
     }
     catch( OutOfMemoryError oom )
@@ -202,6 +937,10 @@ abstract class FractalCalculator implements Runnable
       System.out.println( "Fractal ERROR !!! (calculator) ... " + t );
       fractal.calculatorCallback( false, null );
     }
+    finally
+    {
+      releaseImage(); // The Fractal no longer shows it as a preview.
+    }
   }
 
   protected void stop()
@@ -209,6 +948,90 @@ abstract class FractalCalculator implements Runnable
     stopRequested = true;
   }
 
+  private void updateProgress( int numPixels )
+  {
+    // Tiles finish in no particular order, so report the total pixel count.
+    int before = pixelsDone.getAndAdd( numPixels );
+    int percentBefore = (int)( 100L * before / totalPixels );
+    int percentAfter = (int)( 100L * ( before + numPixels ) / totalPixels );
+    if( percentAfter != percentBefore && percentAfter < 100 )
+    {
+      fractal.setStatus2( " " + percentAfter + "% Complete." );
+    }
+  }
+
+  protected void testPoints( double[] r, double[] i, int[] results, int n )
+  {
+    // Test n points; the same as calling testPoint() for each of them.
+    // Overridden by calculators which can test several points at once.
+    // The last point of each orbit is left in r and i, or NaN if it is not
+    // known, as here.
+    for( int lane = 0; lane < n; lane++ )
+    {
+      stats.countPointTested();
+      results[ lane ] = testPoint( r[ lane ], i[ lane ], maxIterations );
+      r[ lane ] = Double.NaN;
+      i[ lane ] = Double.NaN;
+    }
+  }
+
   // Subclasses must implement this method:
   protected abstract int testPoint( double r, double i, int maxIterations );
+
+  /////////////////////////////////////////////////////////////////////
+  // INNER CLASSES of class FractalCalculator: ////////////////////////
+  /////////////////////////////////////////////////////////////////////
+
+  class TileTask extends RecursiveAction
+  {
+    // A rectangle of pixels.  Example of the "Composite" Design Pattern:
+    // a big tile is made up of two smaller tiles, each of which may be
+    // split again, until the tiles are small enough to be calculated.
+    private static final long serialVersionUID = 1L;
+
+    private int xMin;
+    private int yMin;
+    private int width;
+    private int height;
+
+    TileTask( int xMin, int yMin, int width, int height )
+    {
+      this.xMin = xMin;
+      this.yMin = yMin;
+      this.width = width;
+      this.height = height;
+    }
+
+    protected void compute()
+    {
+      if( stopRequested )
+      {
+        return;
+      }
+      boolean splitWidth = ( width >= height && width >= 2 * FIRST_STEP );
+      boolean splitHeight = ( width < height && height >= 2 * FIRST_STEP );
+      if( width * height <= TILE_PIXELS || ! ( splitWidth || splitHeight ))
+      {
+        if( ! calcTile( xMin, yMin, width, height ))
+        {
+          stopRequested = true; // Tell the other tiles to stop too.
+        }
+        return;
+      }
+
+      // Split the longer side in half, on a multiple of FIRST_STEP.
+      if( splitWidth )
+      {
+        int half = width / 2 / FIRST_STEP * FIRST_STEP;
+        invokeAll( new TileTask( xMin, yMin, half, height ),
+                   new TileTask( xMin + half, yMin, width - half, height ));
+      }
+      else
+      {
+        int half = height / 2 / FIRST_STEP * FIRST_STEP;
+        invokeAll( new TileTask( xMin, yMin, width, half ),
+                   new TileTask( xMin, yMin + half, width, height - half ));
+      }
+    }
+  }
 }
\ No newline at end of file
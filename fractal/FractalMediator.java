@@ -0,0 +1,50 @@
+////////////////////////////////////////////////////////////////////////////////
+// FractalMediator Interface ///////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// FractalMediator is all that the calculators (and the IterationProbe) know of
+// the Fractal, which mediates between them and the rest of the program (see
+// Fractal): the settings of a new Drawing, and where to report on it.  The
+// Fractal is an Applet, which can not be made without a display, so the tests
+// implement this interface instead (see test/fractal/TestFractal).
+
+package fractal;
+
+import java.awt.*;
+
+interface FractalMediator
+{
+  // Called by the render Thread when a calculator is done, or stopped.
+  void calculatorCallback( boolean success, Drawing newDrawing );
+
+  // Called after each pass of progressive refinement.
+  void calculatorPreview( Image preview );
+
+  Color[] getCurrentColorMap();
+
+  Drawing getCurrentDrawing();
+
+  int getImageHeight();
+
+  int getImageWidth();
+
+  // Switches for the performance optimizations.
+  boolean hasLanes();
+
+  boolean hasPeriodicityChecking();
+
+  boolean hasProgressiveRefinement();
+
+  boolean hasSeriesApproximation();
+
+  boolean hasSymmetry();
+
+  void outOfMemory( boolean oom );
+
+  void setStatus( String s );
+
+  void setStatus2( String s );
+}
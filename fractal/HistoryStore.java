@@ -0,0 +1,376 @@
+////////////////////////////////////////////////////////////////////////////////
+// HistoryStore Class //////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The HistoryStore keeps the Drawings on the Previous and Next stacks within
+// a budget of memory.  Most of a Drawing's memory is its pixels and its
+// OrbitBuffer; once the Drawings in memory take more than the budget, those
+// of the least recently visited Drawings are compressed and written to a
+// temporary file (they are "spilled"), and the Drawing keeps only what is
+// needed to read them back.  visit() reads them back whenever the Drawing
+// becomes the current Drawing again.
+//
+// Where files may not be written (as in an Applet), the compressed data is
+// kept in memory instead; fractal images compress very well.
+//
+// A Drawing whose colors were changed by the FastColorsCalculator shares its
+// pixels and OrbitBuffer with the Drawing it came from, so the memory in use
+// counts each shared buffer only once.  Spilling one of them frees nothing
+// while the other is still in memory; it is read back as a copy of its own.
+//
+// The current Drawing is never spilled, and neither is a HelpDrawing.
+//
+// The OrbitBuffers of the Drawings in the history are compacted (see
+// compact()): the raw numbers of iterations are kept as shorts, and the
+// escape fractions as they are, but the last points are dropped.  That is 6
+// bytes per pixel, next to the image's 1 (or 2 with more than 255 colors).
+// So a Drawing visited again can still be colored again, and its pixels
+// reused, without testing any points.  Continued with more iterations (see
+// ResumeCalculator), its pixels which had escaped, or were in the set, are
+// kept too, but those which ran out of iterations are calculated again from
+// the beginning, having no last points to carry on from.
+//
+// The buffers of spilled and deleted Drawings go back to the BufferPool, for
+// the next Drawings to use, but only once recycle() is called: until the
+// calculator is done, it may still be using them.  A buffer which is still
+// shared with a Drawing in memory is kept, of course.
+
+package fractal;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import fractal.utils.*;
+
+class HistoryStore
+{
+  private long                     budget;   // In bytes.
+  private Vector<Drawing>          drawings; // Least recently visited first.
+  private Hashtable<Drawing,Spill> spills;   // Of each spilled Drawing.
+  private Vector<Object>           released; // Waiting for recycle().
+
+  protected HistoryStore( long budget )
+  {
+    this.budget = budget;
+    drawings = new Vector<Drawing>();
+    spills = new Hashtable<Drawing,Spill>();
+    released = new Vector<Object>();
+  }
+
+  protected void forget( Drawing d )
+  {
+    // The Drawing has been deleted.
+    drawings.removeElement( d );
+    release( d );
+    if( d.getImage() != null )
+    {
+      d.getImage().flush(); // Such as a HelpDrawing's screen resources.
+    }
+    Spill spill = spills.remove( d );
+    if( spill != null )
+    {
+      spill.delete();
+    }
+  }
+
+  private static long getBufferSize( DataBuffer buffer )
+  {
+    // The size of the pixels, in bytes.
+    return (long) buffer.getSize() *
+           DataBuffer.getDataTypeSize( buffer.getDataType() ) / 8;
+  }
+
+  private long getMemoryInUse()
+  {
+    // The memory taken by the pixels and OrbitBuffers of the Drawings which
+    // have not been spilled.  Shared buffers are only counted once.
+    IdentityHashMap<Object,Object> counted =
+      new IdentityHashMap<Object,Object>();
+    long size = 0;
+    for( int n = 0; n < drawings.size(); n++ )
+    {
+      Drawing d = drawings.elementAt( n );
+      DataBuffer pixels = getPixels( d );
+      if( pixels != null && counted.put( pixels, pixels ) == null )
+      {
+        size += getBufferSize( pixels );
+      }
+      OrbitBuffer orbits = d.getOrbits();
+      if( orbits != null && counted.put( orbits, orbits ) == null )
+      {
+        size += orbits.getMemorySize();
+      }
+    }
+    return size;
+  }
+
+  private static DataBuffer getPixels( Drawing d )
+  {
+    // Returns null unless the Drawing's image was made by a calculator.
+    if( ! ( d.getImage() instanceof BufferedImage ) ||
+        d instanceof HelpDrawing )
+    {
+      return null;
+    }
+    return ((BufferedImage) d.getImage()).getRaster().getDataBuffer();
+  }
+
+  private void compact( Drawing current )
+  {
+    // Compact the OrbitBuffers of the Drawings in the history, unless the
+    // current Drawing shares them.  The current Drawing expands its own
+    // again in visit().
+    OrbitBuffer kept = ( current == null ) ? null : current.getOrbits();
+    for( int n = 0; n < drawings.size(); n++ )
+    {
+      OrbitBuffer orbits = drawings.elementAt( n ).getOrbits();
+      if( orbits != null && orbits != kept )
+      {
+        orbits.compact();
+      }
+    }
+  }
+
+  protected void recycle( Drawing current )
+  {
+    // Compact the history, and hand the released buffers back to the
+    // BufferPool, except those which a Drawing in memory still shares.  Call
+    // this only while no calculator is running.
+    compact( current );
+    IdentityHashMap<Object,Drawing> inUse =
+      new IdentityHashMap<Object,Drawing>();
+    for( int n = 0; n < drawings.size(); n++ )
+    {
+      Drawing d = drawings.elementAt( n );
+      if( getPixels( d ) != null )
+      {
+        inUse.put( getPixels( d ), d );
+      }
+      if( d.getOrbits() != null )
+      {
+        inUse.put( d.getOrbits(), d );
+      }
+    }
+    for( int n = 0; n < released.size(); n++ )
+    {
+      Object buffer = released.elementAt( n );
+      if( inUse.containsKey( buffer ))
+      {
+        continue;
+      }
+      if( buffer instanceof OrbitBuffer )
+      {
+        ((OrbitBuffer) buffer).release();
+      }
+      else
+      {
+        BufferPool.release( (DataBuffer) buffer );
+      }
+    }
+    released.removeAllElements();
+  }
+
+  private void release( Drawing d )
+  {
+    // The Drawing's buffers are no longer needed, unless they are shared.
+    DataBuffer pixels = getPixels( d );
+    if( pixels != null && ! released.contains( pixels ))
+    {
+      released.addElement( pixels );
+    }
+    OrbitBuffer orbits = d.getOrbits();
+    if( orbits != null && ! released.contains( orbits ))
+    {
+      released.addElement( orbits );
+    }
+  }
+
+  protected int spillAll( Drawing current )
+  {
+    // Spill every Drawing but the current one, as when memory has run out.
+    // Returns the number of Drawings spilled.
+    int count = 0;
+    for( int n = 0; n < drawings.size(); n++ )
+    {
+      Drawing d = drawings.elementAt( n );
+      if( d != current && spill( d ))
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private boolean spill( Drawing d )
+  {
+    // Returns false if there is nothing to spill.
+    if( spills.containsKey( d ) || getPixels( d ) == null )
+    {
+      return false;
+    }
+    try
+    {
+      spills.put( d, new Spill( d ));
+      release( d );
+      d.setImage( null );
+      d.setOrbits( null );
+      return true;
+    }
+    catch( IOException e )
+    {
+      System.out.println( "Fractal Warning: (history) ... " + e );
+      return false;
+    }
+  }
+
+  protected void visit( Drawing d )
+  {
+    // The Drawing is about to become the current Drawing: read back its
+    // spilled data, if any, and then spill the least recently visited
+    // Drawings, until the rest fit in the budget.
+    Spill spill = spills.remove( d );
+    if( spill != null )
+    {
+      try
+      {
+        spill.restore( d );
+      }
+      catch( IOException e )
+      {
+        System.out.println( "Fractal ERROR !!! (history) ... " + e );
+      }
+      spill.delete();
+    }
+    if( d.getOrbits() != null )
+    {
+      d.getOrbits().expand();
+    }
+    drawings.removeElement( d );
+    drawings.addElement( d );
+    for( int n = 0; n < drawings.size() - 1; n++ )
+    {
+      if( getMemoryInUse() <= budget )
+      {
+        return;
+      }
+      spill( drawings.elementAt( n ));
+    }
+  }
+
+  private static class Spill
+  {
+    // The compressed pixels and OrbitBuffer of a spilled Drawing, in a
+    // temporary file, or in memory if there is no file.
+    private File            file;
+    private byte[]          bytes;
+    private ColorModel      model;
+
+    private Spill( Drawing d ) throws IOException
+    {
+      model = ((BufferedImage) d.getImage()).getColorModel();
+      OutputStream sink = null;
+      ByteArrayOutputStream memory = null;
+      try
+      {
+        file = File.createTempFile( "fractal", ".drawing" );
+        file.deleteOnExit();
+        sink = new FileOutputStream( file );
+      }
+      catch( Exception e )
+      {
+        // No files may be written, as in an Applet.
+        file = null;
+        memory = new ByteArrayOutputStream();
+        sink = memory;
+      }
+      // Speed matters more than size here.
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream(
+        new DeflaterOutputStream( sink, new Deflater( Deflater.BEST_SPEED ))));
+      try
+      {
+        writePixels( out, ((BufferedImage) d.getImage()).getRaster() );
+        boolean orbits = ( d.getOrbits() != null );
+        out.writeBoolean( orbits );
+        if( orbits )
+        {
+          d.getOrbits().write( out );
+        }
+      }
+      finally
+      {
+        out.close();
+      }
+      if( memory != null )
+      {
+        bytes = memory.toByteArray();
+      }
+    }
+
+    private void delete()
+    {
+      if( file != null )
+      {
+        file.delete();
+      }
+    }
+
+    private void restore( Drawing d ) throws IOException
+    {
+      InputStream source = ( file != null ) ? new FileInputStream( file )
+                              : (InputStream) new ByteArrayInputStream( bytes );
+      DataInputStream in = new DataInputStream( new BufferedInputStream(
+                             new InflaterInputStream( source )));
+      try
+      {
+        WritableRaster raster = readPixels( in );
+        d.setImage( new BufferedImage( model, raster, false, null ));
+        if( in.readBoolean() )
+        {
+          d.setOrbits( OrbitBuffer.read( in ));
+        }
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+
+    private WritableRaster readPixels( DataInputStream in ) throws IOException
+    {
+      int width = in.readInt();
+      int height = in.readInt();
+      WritableRaster raster = BufferPool.getRaster( model.getTransferType(),
+                                                    width, height );
+      DataBuffer buffer = raster.getDataBuffer();
+      if( buffer instanceof DataBufferByte )
+      {
+        BufferPool.read( in, ((DataBufferByte) buffer).getData() );
+      }
+      else
+      {
+        BufferPool.read( in, ((DataBufferUShort) buffer).getData() );
+      }
+      return raster;
+    }
+
+    private void writePixels( DataOutputStream out, WritableRaster raster )
+      throws IOException
+    {
+      out.writeInt( raster.getWidth() );
+      out.writeInt( raster.getHeight() );
+      DataBuffer buffer = raster.getDataBuffer();
+      if( buffer instanceof DataBufferByte )
+      {
+        BufferPool.write( out, ((DataBufferByte) buffer).getData() );
+      }
+      else
+      {
+        BufferPool.write( out, ((DataBufferUShort) buffer).getData() );
+      }
+    }
+  }
+}
@@ -0,0 +1,261 @@
+////////////////////////////////////////////////////////////////////////////////
+// IterationProbe Class ////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The IterationProbe chooses maxIterations for a new Drawing by sampling a
+// sparse grid of its points before the real calculation starts.  Too few
+// iterations leave the boundary of the set black and featureless; too many
+// waste time on points which are in the set anyway.
+//
+// The samples are iterated in rounds, each round doubling the number of
+// iterations, and continuing the orbits which have not escaped yet.  Those
+// found to be periodic are inside the set.  Those which escape during the
+// first round, and whose neighbors in the grid all do too, are far outside
+// the set; they would count towards TARGET without saying anything about the
+// boundary.  The rest are near the boundary of the set (see findBoundary()).
+// The probe stops once TARGET of the boundary samples outside the set have
+// escaped, and then chooses the smallest maxIterations for which they escape.
+// It also stops when the next round would take more than its budget of
+// iterations, and then chooses as many iterations as it could afford to
+// check.
+//
+// Only the doubles of the Mandelbrot and Julia calculators are used, so the
+// deep zooms can not be probed (see Fractal.probeNewMaxIterations()).
+
+package fractal;
+
+import java.util.Arrays;
+import fractal.utils.*;
+
+class IterationProbe
+{
+  private FractalCalculator calculator; // Iterates the samples.
+  private long              budget;     // The most iterations to spend.
+  private int               numSamples;
+  private double[]          cR;
+  private double[]          cI;
+  private double[]          zR; // The last point of each orbit.
+  private double[]          zI;
+  private int[]             results;    // -1 until the sample is resolved.
+  private boolean[]         boundary;   // Near the boundary of the set?
+  private int               width;      // Of the grid of samples.
+  private int               height;
+
+  // The samples are a grid of SIZE by SIZE of the image's pixels.
+  private static final int    SIZE = 64;
+
+  // The fraction of the boundary samples which must escape.
+  private static final double TARGET = 0.995;
+
+  // The number of iterations of the first round.
+  private static final int    FIRST_ROUND = 64;
+
+  protected IterationProbe( FractalMediator fractal, Drawing d, long budget )
+  {
+    this.budget = budget;
+    boolean julia = ( d instanceof JuliaDrawing );
+    if( julia )
+    {
+      calculator = new JuliaCalculator( fractal, d );
+    }
+    else
+    {
+      calculator = new MandelbrotCalculator( fractal, d );
+    }
+    calculator.periodicityChecking = true; // Find the inside quickly.
+
+    width = Math.min( SIZE, fractal.getImageWidth() );
+    height = Math.min( SIZE, fractal.getImageHeight() );
+    numSamples = width * height;
+    cR = new double[ numSamples ];
+    cI = new double[ numSamples ];
+    zR = new double[ numSamples ];
+    zI = new double[ numSamples ];
+    results = new int[ numSamples ];
+    Arrays.fill( results, -1 );
+    boundary = new boolean[ numSamples ];
+    Arrays.fill( boundary, true ); // Until the first round has been iterated.
+    ComplexPoint juliaPoint = julia ? ((JuliaDrawing) d).getJuliaPoint()
+                                    : null;
+    int sample = 0;
+    for( int y = 0; y < height; y++ )
+    {
+      // The middle pixel of each cell of the grid.
+      double i = calculator.getImaginary(
+                   ( 2 * y + 1 ) * fractal.getImageHeight() / ( 2 * height ));
+      for( int x = 0; x < width; x++ )
+      {
+        double r = calculator.getReal(
+                     ( 2 * x + 1 ) * fractal.getImageWidth() / ( 2 * width ));
+        zR[ sample ] = r;
+        zI[ sample ] = i;
+        cR[ sample ] = julia ? juliaPoint.getReal() : r;
+        cI[ sample ] = julia ? juliaPoint.getImaginary() : i;
+        sample++;
+      }
+    }
+  }
+
+  protected int getMaxIterations()
+  {
+    // Iterate the samples, round by round, then choose maxIterations.
+    // Returns 0 if every sample is inside the set.
+    long spent = 0;
+    int done = 0; // The iterations of every round so far.
+    int round = FIRST_ROUND;
+    while( true )
+    {
+      int unresolved = count( -1 );
+      int escaped = countBoundaryEscapes();
+      if( unresolved == 0 || escaped >= TARGET * ( escaped + unresolved ))
+      {
+        break;
+      }
+      if( spent + (long) unresolved * round > budget ||
+          done > Integer.MAX_VALUE - round )
+      {
+        break; // The next round would cost too much.
+      }
+      iterate( done, round );
+      spent += (long) unresolved * round;
+      if( done == 0 )
+      {
+        findBoundary();
+      }
+      done += round;
+      round = done; // Double the total.
+    }
+    return choose( done );
+  }
+
+  private int choose( int done )
+  {
+    // The smallest maxIterations for which TARGET of the boundary samples
+    // escape, or done if not that many of them have escaped.  If every
+    // sample outside the set escaped during the first round, they all count.
+    int unresolved = count( -1 );
+    if( unresolved == 0 && countBoundaryEscapes() == 0 )
+    {
+      Arrays.fill( boundary, true );
+    }
+    int[] escapes = new int[ countBoundaryEscapes() ];
+    int e = 0;
+    for( int sample = 0; sample < numSamples; sample++ )
+    {
+      if( boundary[ sample ] && results[ sample ] > 0 )
+      {
+        escapes[ e++ ] = results[ sample ];
+      }
+    }
+    int total = escapes.length + unresolved;
+    if( total == 0 )
+    {
+      return 0;
+    }
+    int needed = (int) Math.ceil( TARGET * total );
+    if( needed > escapes.length )
+    {
+      return done;
+    }
+    Arrays.sort( escapes );
+    return escapes[ needed - 1 ];
+  }
+
+  private int countBoundaryEscapes()
+  {
+    // The number of boundary samples which have escaped.
+    int n = 0;
+    for( int sample = 0; sample < numSamples; sample++ )
+    {
+      n += ( boundary[ sample ] && results[ sample ] > 0 ) ? 1 : 0;
+    }
+    return n;
+  }
+
+  private void findBoundary()
+  {
+    // After the first round: a sample is near the boundary of the set unless
+    // it, and each of its neighbors in the grid, has escaped already.
+    for( int y = 0; y < height; y++ )
+    {
+      for( int x = 0; x < width; x++ )
+      {
+        boolean near = false;
+        for( int ny = Math.max( y - 1, 0 );
+             ny <= Math.min( y + 1, height - 1 ); ny++ )
+        {
+          for( int nx = Math.max( x - 1, 0 );
+               nx <= Math.min( x + 1, width - 1 ); nx++ )
+          {
+            near |= ( results[ ny * width + nx ] <= 0 );
+          }
+        }
+        boundary[ y * width + x ] = near;
+      }
+    }
+  }
+
+  private int count( int result )
+  {
+    int n = 0;
+    for( int sample = 0; sample < numSamples; sample++ )
+    {
+      n += ( results[ sample ] == result ) ? 1 : 0;
+    }
+    return n;
+  }
+
+  private void iterate( int done, int round )
+  {
+    // Continue the orbits of the unresolved samples, LANES at a time, for one
+    // more round of iterations.
+    int lanes = FractalCalculator.LANES;
+    double[] r = new double[ lanes ];
+    double[] i = new double[ lanes ];
+    double[] x = new double[ lanes ];
+    double[] y = new double[ lanes ];
+    int[] found = new int[ lanes ];
+    int[] sampleOf = new int[ lanes ];
+    int n = 0;
+    for( int sample = 0; sample < numSamples || n > 0; sample++ )
+    {
+      if( sample < numSamples )
+      {
+        if( results[ sample ] != -1 )
+        {
+          continue;
+        }
+        r[ n ] = cR[ sample ];
+        i[ n ] = cI[ sample ];
+        x[ n ] = zR[ sample ];
+        y[ n ] = zI[ sample ];
+        found[ n ] = -1;
+        sampleOf[ n ] = sample;
+        n++;
+        if( n < lanes )
+        {
+          continue; // Wait for all of the lanes, or the last sample.
+        }
+      }
+      calculator.iterateLanes( r, i, x, y, found, n, round );
+      for( int lane = 0; lane < n; lane++ )
+      {
+        int s = sampleOf[ lane ];
+        zR[ s ] = x[ lane ];
+        zI[ s ] = y[ lane ];
+        if( found[ lane ] > 0 )
+        {
+          results[ s ] = done + found[ lane ];
+        }
+        else if( found[ lane ] == 0 )
+        {
+          results[ s ] = 0; // Periodic.
+        }
+      }
+      n = 0;
+    }
+  }
+}
@@ -10,12 +10,17 @@
 
 package fractal;
 
+import java.util.Arrays;
+import fractal.utils.*;
+
 class JuliaCalculator extends FractalCalculator
 {
-  private double  cR = 0.0; // Real
-  private double  cI = 0.0; // Imaginary
+  private double   cR = 0.0; // Real
+  private double   cI = 0.0; // Imaginary
+  private double[] cRs;      // c, once for each lane.
+  private double[] cIs;
 
-  protected JuliaCalculator( Fractal fractal, Drawing newDrawing )
+  protected JuliaCalculator( FractalMediator fractal, Drawing newDrawing )
   {
     super( fractal, newDrawing );
     if( newDrawing instanceof JuliaDrawing )
@@ -24,6 +29,11 @@ class JuliaCalculator extends FractalCalculator
       cI = ((JuliaDrawing) newDrawing).getJuliaPoint().getImaginary();
     }
     // else the point will be (0,0) and the calculator will generate a circle.
+
+    cRs = new double[ LANES ];
+    cIs = new double[ LANES ];
+    Arrays.fill( cRs, cR );
+    Arrays.fill( cIs, cI );
   }
 
   protected int testPoint( double zR, double zI, int maxIterations )
@@ -33,22 +43,27 @@ class JuliaCalculator extends FractalCalculator
     // and c is the Julia Set constant.
     // If |z| >= 2, then the point is not in the set.
     // Return 0 if the point is in the set; else return the number of
-    // iterations it took to decide that the point is not in the set.
-    for( int i = 1; i <= maxIterations; i++ )
+    // iterations it took to decide that the point is not in the set, or
+    // RAN_OUT if maxIterations was not enough to decide.
+    return iterate( cR, cI, zR, zI, maxIterations );
+  }
+
+  protected void testPoints( double[] r, double[] i, int[] results, int n )
+  {
+    // The same as testPoint(), for up to LANES points at once.
+    if( ! lanes )
     {
-       double zROld = zR;
-       // To square a complex number: (a+bi)(a+bi) = a*a - b*b + 2abi
-       zR = zR * zR - zI * zI + cR;
-       zI = 2 * zROld * zI + cI;
-       // We know that if the distance from z to the origin is >= 2
-       // then the point is out of the set.  To avoid a square root,
-       // we'll instead check if the distance squared >= 4.
-       double distSquared = zR * zR + zI * zI;
-       if( distSquared >= 4 )
-       {
-          return i;
-       }
+      super.testPoints( r, i, results, n );
+      return;
     }
-    return 0;
+    Arrays.fill( results, -1 );
+    iterateLanes( cRs, cIs, r, i, results, n, maxIterations );
+  }
+
+  protected SampleMap getMirror()
+  {
+    // Every Julia Set is symmetric through the origin: z and -z have the same
+    // square, so their orbits are the same after the first iteration.
+    return SampleMap.mirrorOrigin( newRect, imageWidth, imageHeight );
   }
 }
@@ -6,42 +6,92 @@
 // and send David some email ( david@leberknight.com ).
 //
 // MandelbrotCalculators compute Mandelbrot Set images.
+//
+// Most of the area of the Mandelbrot Set lies inside two shapes which can be
+// tested for directly: the main cardioid and the period-2 bulb (the big circle
+// to its left). Points inside them never escape, so iterating them all the way
+// to maxIterations would only waste time; at high iteration counts they can be
+// almost all of the work in an overview of the whole set.
 
 package fractal;
 
+import fractal.utils.*;
+
 class MandelbrotCalculator extends FractalCalculator
 {
-  protected MandelbrotCalculator( Fractal fractal, Drawing newDrawing )
+  protected MandelbrotCalculator( FractalMediator fractal, Drawing newDrawing )
   {
     super( fractal, newDrawing );
   }
 
+  private boolean isInside( double cR, double cI )
+  {
+    // Is the point inside one of the shapes which are known to be in the set?
+    if( isInMainCardioid( cR, cI ) )
+    {
+      stats.countCardioidPoint();
+      return true;
+    }
+    if( isInPeriod2Bulb( cR, cI ) )
+    {
+      stats.countBulbPoint();
+      return true;
+    }
+    return false;
+  }
+
+  private static boolean isInMainCardioid( double cR, double cI )
+  {
+    // The main cardioid is bounded by c = w/2 - w*w/4, where |w| = 1.
+    // With q = (cR - 1/4)^2 + cI^2, a point is inside if:
+    // q * ( q + ( cR - 1/4 )) <= cI^2 / 4
+    double r = cR - 0.25;
+    double iSquared = cI * cI;
+    double q = r * r + iSquared;
+    return q * ( q + r ) <= 0.25 * iSquared;
+  }
+
+  private static boolean isInPeriod2Bulb( double cR, double cI )
+  {
+    // The period-2 bulb is the circle of radius 1/4 centered at -1.
+    double r = cR + 1.0;
+    return r * r + cI * cI <= 0.0625;
+  }
+
   protected int testPoint( double cR, double cI, int maxIterations )
   {
     // Is the given complex point, (cR, cI), in the Mandelbrot set?
     // Use the formula: z <= z*z + c, where z is initially equal to c.
     // If |z| >= 2, then the point is not in the set.
     // Return 0 if the point is in the set; else return the number of
-    // iterations it took to decide that the point is not in the set.
-    double zR = cR;
-    double zI = cI;
+    // iterations it took to decide that the point is not in the set, or
+    // RAN_OUT if maxIterations was not enough to decide.
+    if( isInside( cR, cI ) )
+    {
+      return 0;
+    }
+    return iterate( cR, cI, cR, cI, maxIterations );
+  }
 
-    for( int i = 1; i <= maxIterations; i++ )
+  protected void testPoints( double[] r, double[] i, int[] results, int n )
+  {
+    // The same as testPoint(), for up to LANES points at once.
+    if( ! lanes )
+    {
+      super.testPoints( r, i, results, n );
+      return;
+    }
+    for( int lane = 0; lane < n; lane++ )
     {
-       // To square a complex number: (a+bi)(a+bi) = a*a - b*b + 2abi
-       double zROld = zR;
-       zR = zR * zR - zI * zI + cR;
-       zI = 2 * zROld * zI + cI;
-
-       // We know that if the distance from z to the origin is >= 2
-       // then the point is out of the set.  To avoid a square root,
-       // we'll instead check if the distance squared >= 4.
-       double distSquared = zR * zR + zI * zI;
-       if( distSquared >= 4 )
-       {
-          return i;
-       }
+      results[ lane ] = isInside( r[ lane ], i[ lane ] ) ? 0 : -1;
     }
-    return 0;
+    iterateLanes( r, i, r, i, results, n, maxIterations );
+  }
+
+  protected SampleMap getMirror()
+  {
+    // The Mandelbrot Set is symmetric about the real axis: the orbit of the
+    // conjugate of c is the conjugate of the orbit of c.
+    return SampleMap.mirrorReal( newRect, imageWidth, imageHeight );
   }
-}
\ No newline at end of file
+}
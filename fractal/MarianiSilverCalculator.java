@@ -0,0 +1,248 @@
+////////////////////////////////////////////////////////////////////////////////
+// MarianiSilverCalculator Class ///////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The MarianiSilverCalculator is a performance optimization based on the fact
+// that the Mandelbrot Set (and every connected Julia Set) is connected, and
+// has no holes: if every pixel on the border of a rectangle is in the set,
+// then so is every pixel inside it, and the inside need not be calculated at
+// all.  Otherwise the rectangle is divided into four smaller rectangles,
+// sharing the border pixels which have already been calculated, and so on.
+//
+// The border is judged by the raw numbers of iterations in the OrbitBuffer,
+// not by the colors, which many numbers of iterations may share.  Only the
+// pixels known to be in the set (0) are filled in, since they have no escape
+// point nor last point which would have to be made up; the pixels outside
+// the set, and those which ran out of iterations, are always calculated.  So
+// the OrbitBuffer, and any Coloring of it, is the same as that of a full
+// calculation (but see below).
+//
+// With progressive refinement, only the final pass is subdivided, and the
+// pixels calculated by the earlier passes are reused. A rectangle is only
+// filled if those pixels inside it are in the set too.
+//
+// The time saved is in proportion to the area of the image inside the set:
+// views with large black areas are calculated several times faster, while
+// views which are mostly outside the set gain almost nothing (and the bands
+// of one number of iterations outside the set are calculated pixel by pixel).
+//
+// A filled pixel could only be wrong if the outside of the set reached into
+// the rectangle through a gap narrower than a pixel between two of its border
+// pixels.  That is possible, but rare; none of the views in MarianiSilverTest
+// has such a pixel.  That is why subdivision can still be switched off.
+//
+// This is an example of the "Decorator" Design Pattern: the calculator which
+// is being decorated (Mandelbrot or Julia) still decides whether or not each
+// point is in the set; the decorator only decides which points to test.
+
+package fractal;
+
+import fractal.utils.*;
+
+class MarianiSilverCalculator extends FractalCalculator
+{
+  private FractalCalculator calculator; // The decorated calculator.
+  private boolean           connected;
+
+  // Rectangles this small are simply calculated pixel by pixel.
+  private static final int  MIN_SIZE = 6;
+
+  protected MarianiSilverCalculator( FractalMediator fractal,
+                                     Drawing newDrawing,
+                                     FractalCalculator calculator )
+  {
+    super( fractal, newDrawing );
+    this.calculator = calculator;
+    calculator.stats = stats; // Share one set of statistics.
+    connected = true;
+    if( newDrawing instanceof JuliaDrawing )
+    {
+      connected = isConnected(
+                    ((JuliaDrawing) newDrawing).getJuliaPoint() );
+    }
+  }
+
+  protected boolean calcPixels( int xMin, int yMin, int width, int height )
+  {
+    if( ! connected || step > 1 )
+    {
+      // The subdivision trick does not work for Julia Sets which are dust.
+      // The passes of a progressive refinement preview are not subdivided.
+      return super.calcPixels( xMin, yMin, width, height );
+    }
+    return subdivide( xMin, yMin, xMin + width - 1, yMin + height - 1 );
+  }
+
+  private int calcPixel( int x, int y )
+  {
+    // Calculate the pixel only if it has not been calculated yet.  Returns
+    // its raw number of iterations, or MIRRORED.
+    if( colorNumbers.get( x, y ) == UNKNOWN )
+    {
+      pixels.setElem( y * imageWidth + x, getColor( x, y ));
+    }
+    return getIterations( x, y );
+  }
+
+  private int getIterations( int x, int y )
+  {
+    // The raw number of iterations of a pixel, or MIRRORED, or UNKNOWN.
+    if( colorNumbers.get( x, y ) == MIRRORED )
+    {
+      return MIRRORED;
+    }
+    return orbits.getIterations().get( x, y );
+  }
+
+  protected String getConsoleOutputString()
+  {
+    return calculator.getConsoleOutputString() +
+           "  Using Mariani-Silver subdivision.";
+  }
+
+  private boolean isConnected( ComplexPoint c )
+  {
+    // A Julia Set is connected if, and only if, its point c is in the
+    // Mandelbrot Set, which is true if the orbit of 0 does not escape.
+    double cR = c.getReal();
+    double cI = c.getImaginary();
+    double zR = 0.0;
+    double zI = 0.0;
+    for( int i = 1; i <= maxIterations; i++ )
+    {
+      double zROld = zR;
+      zR = zR * zR - zI * zI + cR;
+      zI = 2 * zROld * zI + cI;
+      if( zR * zR + zI * zI >= 4 )
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isInsideSame( int xMin, int yMin, int xMax, int yMax,
+                                int numIterations )
+  {
+    // Do the pixels already calculated inside the rectangle (by an earlier
+    // pass) have the same raw number of iterations as the border?
+    for( int y = yMin + 1; y < yMax; y++ )
+    {
+      for( int x = xMin + 1; x < xMax; x++ )
+      {
+        int known = getIterations( x, y );
+        if( known != UNKNOWN && known != numIterations )
+        {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean subdivide( int xMin, int yMin, int xMax, int yMax )
+  {
+    // The rectangle includes its border: xMin, yMin, xMax & yMax.
+    if( stopRequested )
+    {
+      return false;
+    }
+
+    // Calculate the border, and see if it is all in the set (or all
+    // MIRRORED).
+    int first = calcPixel( xMin, yMin );
+    boolean same = ( first == 0 || first == MIRRORED );
+    for( int x = xMin; x <= xMax; x++ )
+    {
+      same &= ( calcPixel( x, yMin ) == first );
+      same &= ( calcPixel( x, yMax ) == first );
+    }
+    for( int y = yMin + 1; y < yMax; y++ )
+    {
+      same &= ( calcPixel( xMin, y ) == first );
+      same &= ( calcPixel( xMax, y ) == first );
+    }
+    if( stopRequested )
+    {
+      return false; // The border may not be finished.
+    }
+    if( xMax - xMin < 2 || yMax - yMin < 2 )
+    {
+      return true; // There is no inside.
+    }
+
+    if( same )
+    {
+      same = isInsideSame( xMin, yMin, xMax, yMax, first );
+    }
+
+    if( same && first == MIRRORED )
+    {
+      return true; // It will all be copied from its mirror image.
+    }
+    if( same )
+    {
+      // Fill in the inside, without calculating it: it is all in the set.
+      int filled = 0;
+      for( int y = yMin + 1; y < yMax; y++ )
+      {
+        int offset = y * imageWidth;
+        for( int x = xMin + 1; x < xMax; x++ )
+        {
+          if( colorNumbers.get( x, y ) == UNKNOWN )
+          {
+            pixels.setElem( offset + x, colorPixel( x, y, 0 ));
+            filled++;
+          }
+        }
+      }
+      stats.countFilledPoints( filled );
+      return true;
+    }
+
+    if( xMax - xMin < MIN_SIZE || yMax - yMin < MIN_SIZE )
+    {
+      for( int y = yMin + 1; y < yMax; y++ )
+      {
+        for( int x = xMin + 1; x < xMax; x++ )
+        {
+          calcPixel( x, y );
+        }
+      }
+      return true;
+    }
+
+    // Divide into four rectangles which share their borders.
+    int xMid = ( xMin + xMax ) / 2;
+    int yMid = ( yMin + yMax ) / 2;
+    return subdivide( xMin, yMin, xMid, yMid ) &&
+           subdivide( xMid, yMin, xMax, yMid ) &&
+           subdivide( xMin, yMid, xMid, yMax ) &&
+           subdivide( xMid, yMid, xMax, yMax );
+  }
+
+  protected SampleMap getMirror()
+  {
+    return calculator.getMirror();
+  }
+
+  protected void stop()
+  {
+    // The decorated calculator's iterations must stop too.
+    super.stop();
+    calculator.stop();
+  }
+
+  protected int testPoint( double r, double i, int maxIterations )
+  {
+    return calculator.testPoint( r, i, maxIterations );
+  }
+
+  protected void testPoints( double[] r, double[] i, int[] results, int n )
+  {
+    calculator.testPoints( r, i, results, n );
+  }
+}
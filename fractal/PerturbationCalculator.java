@@ -0,0 +1,587 @@
+////////////////////////////////////////////////////////////////////////////////
+// PerturbationCalculator Class ////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The PerturbationCalculator draws both Mandelbrot and Julia Sets at zooms too
+// deep for doubles, where the pixels are closer together than the difference
+// between two neighbouring doubles.  Only one point, the "reference", has its
+// orbit calculated with all of the digits that are needed, as FixedPoints,
+// which is slow.  Every pixel is then iterated as a tiny difference (a
+// "delta") from the reference orbit, using doubles, which is fast; the deltas
+// are tiny, but doubles can be as tiny as 1e-308 without losing any of their
+// digits.  If Z is the reference orbit and z = Z + dz, then
+// z*z + c = Z*Z + C + 2*Z*dz + dz*dz + dc, so:
+//
+//   dz <= 2*Z*dz + dz*dz + dc
+//
+// where dc is the difference between the pixel's c and the reference's C
+// (for a Julia Set, dc is 0).
+//
+// Rounding errors of the delta grow quickly when the pixel's orbit passes much
+// closer to 0 than the reference orbit does at the same iteration.  For the
+// Mandelbrot Set this is avoided by "rebasing" (Zhuoran's method): as soon as
+// |z| < |dz|, the pixel's orbit is restarted against the beginning of the
+// reference orbit, which is 0, so that dz = z, and so the delta can never be
+// bigger than the point itself.  A pixel whose orbit outlives an escaping
+// reference orbit is rebased the same way.
+//
+// A Julia Set's reference orbit does not begin at 0, so there the pixels which
+// come too close to 0 are detected instead, as "glitches" (Pauldelbrot's
+// criterion: |z| is less than 1/1000 of |Z|).  Glitched pixels are not colored,
+// but are left for endPasses(), which picks one of them as a new reference and
+// calculates them all again.  After MAX_REFERENCES tries, the glitches which
+// remain are simply accepted.
+//
+// At a deep zoom, every pixel follows nearly the same orbit as the reference
+// for thousands of iterations before they part ways, and iterating all of
+// them through that shared beginning is a waste.  While the deltas are still
+// tiny, each one is very nearly a polynomial in the pixel's offset, u, from
+// the reference pixel (a "series approximation"):
+//
+//   dz = A1*u + A2*u^2 + A3*u^3 + ...
+//
+// where the coefficients depend only upon the reference orbit.  The offset is
+// measured in pixels, not in the tiny units of the complex plane, so that the
+// powers of the offset, and the coefficients, stay within range of a double.
+// calcSeries() finds the last iteration at which the polynomial still agrees
+// with a few probe pixels, at the corners and edges of the image, to within a
+// tiny fraction of a pixel, and testPoint() starts every pixel there.
+//
+// Beyond a pixel size of about 1e-270, the deltas are getting too tiny for
+// doubles, which lose digits below about 1e-308, so the calculator is made with
+// "extended exponents": while a delta is tiny, it is kept as a pair of double
+// mantissas with a separate int exponent, which is shared by its real and
+// imaginary parts, just as a FloatExp would keep it.  Every delta grows as the
+// pixel's orbit parts ways with the reference, and as soon as it fits in a
+// double again it is iterated with plain doubles, so the extra cost is only
+// paid for the iterations which need it.  While the delta is that tiny, the
+// point itself is the same as the reference point, as far as doubles can tell.
+// getReal() and getImaginary() give the pixel's offset from the reference in
+// pixels, not as a delta, so that it fits in a double at any zoom.
+//
+// There is no periodicity checking here: the orbits of the deltas do not repeat
+// the way the orbits of the points themselves do.
+
+package fractal;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import fractal.utils.*;
+
+class PerturbationCalculator extends FractalCalculator
+{
+  private boolean          julia;
+  private double           juliaR;
+  private double           juliaI;
+  private double[]         orbitR; // The reference orbit.
+  private double[]         orbitI;
+  private double[]         glitchSize; // |Z|^2 times GLITCH_TOLERANCE.
+  private int              orbitLength; // The last point of the orbit.
+  private int              refX; // The reference pixel.
+  private int              refY;
+  private boolean          acceptGlitches;
+  private boolean          seriesApproximation;
+  private int              seriesStart; // The iteration the pixels start at.
+  private double[]         seriesR; // The coefficients at seriesStart.
+  private double[]         seriesI;
+  private int              seriesExponent; // Of tiny coefficients, or 0.
+  private boolean          extended; // Are the deltas too tiny for doubles?
+  private FloatExp         pixelSize; // The same as delta, but never 0.
+
+  // testPoint() returns this if the delta lost too many digits.
+  private static final int GLITCH = -1;
+
+  // The colorNumber of a glitched pixel which must be calculated again.
+  private static final int GLITCHED = -3;
+
+  // A pixel is glitched if |z|^2 is less than this times |Z|^2.
+  private static final double GLITCH_TOLERANCE = 1.0e-6;
+
+  // The number of reference orbits calculated before giving up on glitches.
+  private static final int MAX_REFERENCES = 8;
+
+  // The number of decimal digits beyond those needed to tell pixels apart.
+  private static final int GUARD_DIGITS = 20;
+
+  // The number of terms of the series approximation.
+  private static final int SERIES_TERMS = 8;
+
+  // The largest error allowed in the series approximation, in pixels.
+  private static final double SERIES_TOLERANCE = 1.0e-3;
+
+  // Deltas smaller than 2^TINY_EXPONENT (about 1e-271) need extended
+  // exponents.  That leaves room for a delta to be 2^122 times smaller than
+  // the others, before it would lose any digits as a double.
+  protected static final int TINY_EXPONENT = -900;
+
+  // The mantissas of a tiny delta are rescaled to about 1 whenever they
+  // become bigger than 2^RESCALE, or smaller than 2^-RESCALE.
+  private static final int RESCALE = 64;
+
+  protected PerturbationCalculator( FractalMediator fractal, Drawing newDrawing,
+                                    boolean extendedExponents )
+  {
+    super( fractal, newDrawing );
+    extended = extendedExponents;
+    pixelSize = newRect.getFloatExpWidth().divide( (double) imageWidth );
+    julia = ( newDrawing instanceof JuliaDrawing );
+    if( julia )
+    {
+      juliaR = ((JuliaDrawing) newDrawing).getJuliaPoint().getReal();
+      juliaI = ((JuliaDrawing) newDrawing).getJuliaPoint().getImaginary();
+    }
+    orbitR = new double[ maxIterations + 2 ];
+    orbitI = new double[ maxIterations + 2 ];
+    glitchSize = new double[ maxIterations + 2 ];
+    refX = imageWidth / 2;
+    refY = imageHeight / 2;
+    acceptGlitches = false;
+    seriesApproximation = fractal.hasSeriesApproximation();
+    seriesR = new double[ SERIES_TERMS ];
+    seriesI = new double[ SERIES_TERMS ];
+  }
+
+  protected boolean beginPasses()
+  {
+    // The first reference is the pixel at the center of the image.
+    return calcReferenceOrbit();
+  }
+
+  private boolean calcReferenceOrbit()
+  {
+    // Iterate the reference pixel with enough digits to tell pixels apart.
+    // Keep the orbit as doubles; they are all somewhere near the origin, so
+    // a fixed number of digits after the decimal point is what is needed.
+    stats.countReferenceOrbit();
+    int scale = (int) Math.ceil( -pixelSize.log() / Math.log( 10 )) +
+                GUARD_DIGITS;
+    int limbs = FixedPoint.limbsFor( scale );
+
+    FixedPoint zR = new FixedPoint( limbs );
+    FixedPoint zI = new FixedPoint( limbs );
+    FixedPoint cR = new FixedPoint( limbs );
+    FixedPoint cI = new FixedPoint( limbs );
+    FixedPoint zISquared = new FixedPoint( limbs );
+    newRect.getPoint( new FloatExp( pixelSize ).multiply( refX ),
+                      new FloatExp( pixelSize ).multiply( imageHeight - refY ),
+                      zR, zI );
+
+    // A Mandelbrot orbit begins at 0; a Julia orbit at the reference itself.
+    if( julia )
+    {
+      cR.set( new BigDecimal( juliaR ));
+      cI.set( new BigDecimal( juliaI ));
+    }
+    else
+    {
+      cR.set( zR );
+      cI.set( zI );
+      zR.set( BigDecimal.ZERO );
+      zI.set( BigDecimal.ZERO );
+    }
+    orbitR[ 0 ] = zR.doubleValue();
+    orbitI[ 0 ] = zI.doubleValue();
+    orbitLength = orbitR.length - 1;
+    for( int i = 1; i < orbitR.length; i++ )
+    {
+      // z <= z*z + c
+      zISquared.set( zI ).square();
+      zI.multiply( zR, zI );
+      zI.add( zI ).add( cI );
+      zR.square().subtract( zISquared ).add( cR );
+
+      double r = zR.doubleValue();
+      double im = zI.doubleValue();
+      orbitR[ i ] = r;
+      orbitI[ i ] = im;
+      glitchSize[ i ] = GLITCH_TOLERANCE * ( r * r + im * im );
+      if( r * r + im * im >= 4 )
+      {
+        orbitLength = i; // The reference escaped.
+        break;
+      }
+      if( i % 256 == 0 && stopRequested )
+      {
+        return false;
+      }
+    }
+    calcSeries();
+    return ! stopRequested;
+  }
+
+  private void calcSeries()
+  {
+    // Find the coefficients of the series approximation for as many
+    // iterations as the probe pixels allow.  At the start, dz = delta*u, so
+    // A1 = delta.  Then, since dz <= 2*Z*dz + dz*dz + dc:
+    //   A1 <= 2*Z*A1 + delta  (but 2*Z*A1 for a Julia Set, with no dc)
+    //   Ak <= 2*Z*Ak + the sum of Aj*A(k-j), for j = 1 to k-1
+    seriesStart = julia ? 0 : 1;
+    Arrays.fill( seriesR, 0.0 );
+    Arrays.fill( seriesI, 0.0 );
+    seriesR[ 0 ] = extended ? pixelSize.getMantissa() : delta;
+    seriesExponent = extended ? pixelSize.getExponent() : 0;
+    if( ! seriesApproximation )
+    {
+      return;
+    }
+
+    // The pixels must still do at least their last iteration themselves.
+    int last = Math.min( orbitLength - 1, maxIterations - 1 + seriesStart );
+    if( extended && ! calcTinySeries( last ))
+    {
+      return;
+    }
+
+    // The probes are at the corners and the middles of the edges.
+    int[] probeX = { 0, imageWidth / 2, imageWidth - 1, 0,
+                     imageWidth - 1, 0, imageWidth / 2, imageWidth - 1 };
+    int[] probeY = { 0, 0, 0, imageHeight / 2,
+                     imageHeight / 2, imageHeight - 1, imageHeight - 1,
+                     imageHeight - 1 };
+    int numProbes = probeX.length;
+    double[] uR = new double[ numProbes ];
+    double[] uI = new double[ numProbes ];
+    double[] dzR = new double[ numProbes ];
+    double[] dzI = new double[ numProbes ];
+    for( int p = 0; p < numProbes; p++ )
+    {
+      uR[ p ] = probeX[ p ] - refX;
+      uI[ p ] = refY - probeY[ p ];
+      dzR[ p ] = evaluateSeries( seriesR, seriesI, uR[ p ], uI[ p ], true );
+      dzI[ p ] = evaluateSeries( seriesR, seriesI, uR[ p ], uI[ p ], false );
+    }
+    double dc = julia ? 0.0 : 1.0;
+    double[] nextR = seriesR.clone();
+    double[] nextI = seriesI.clone();
+
+    for( int n = seriesStart; n < last; n++ )
+    {
+      // Update the coefficients from the highest down, so that the lower
+      // ones on the right hand side are still the old ones.
+      double zR = orbitR[ n ];
+      double zI = orbitI[ n ];
+      for( int k = SERIES_TERMS - 1; k >= 0; k-- )
+      {
+        double sumR = ( k == 0 ) ? dc * delta : 0.0;
+        double sumI = 0.0;
+        for( int j = 0; j < k; j++ )
+        {
+          int l = k - 1 - j; // The powers of terms j and l add up to k's.
+          sumR += nextR[ j ] * nextR[ l ] - nextI[ j ] * nextI[ l ];
+          sumI += nextR[ j ] * nextI[ l ] + nextI[ j ] * nextR[ l ];
+        }
+        double tR = 2 * ( zR * nextR[ k ] - zI * nextI[ k ] ) + sumR;
+        nextI[ k ] = 2 * ( zR * nextI[ k ] + zI * nextR[ k ] ) + sumI;
+        nextR[ k ] = tR;
+      }
+
+      // Is the series still good enough at iteration n + 1 for every probe?
+      // (A1 is how far apart neighbouring pixels' orbits are by now.)
+      double tolerance = SERIES_TOLERANCE *
+                         Math.sqrt( nextR[ 0 ] * nextR[ 0 ] +
+                                    nextI[ 0 ] * nextI[ 0 ] );
+      for( int p = 0; p < numProbes; p++ )
+      {
+        double dzROld = dzR[ p ];
+        dzR[ p ] = 2 * ( zR * dzR[ p ] - zI * dzI[ p ] ) +
+                   dzR[ p ] * dzR[ p ] - dzI[ p ] * dzI[ p ] +
+                   dc * uR[ p ] * delta;
+        dzI[ p ] = 2 * ( zR * dzI[ p ] + zI * dzROld ) +
+                   2 * dzROld * dzI[ p ] + dc * uI[ p ] * delta;
+
+        // The probe must not have escaped, nor be in need of a rebase.
+        double pR = orbitR[ n + 1 ] + dzR[ p ];
+        double pI = orbitI[ n + 1 ] + dzI[ p ];
+        double distSquared = pR * pR + pI * pI;
+        if( ! ( distSquared < 4 &&
+                distSquared >= dzR[ p ] * dzR[ p ] + dzI[ p ] * dzI[ p ] &&
+                distSquared >= glitchSize[ n + 1 ] ))
+        {
+          return;
+        }
+
+        double sR = evaluateSeries( nextR, nextI, uR[ p ], uI[ p ], true );
+        double sI = evaluateSeries( nextR, nextI, uR[ p ], uI[ p ], false );
+        if( ! ( Math.abs( sR - dzR[ p ] ) + Math.abs( sI - dzI[ p ] ) <=
+                tolerance ))
+        {
+          return; // Also if anything overflowed, and is NaN.
+        }
+      }
+
+      seriesStart = n + 1;
+      System.arraycopy( nextR, 0, seriesR, 0, SERIES_TERMS );
+      System.arraycopy( nextI, 0, seriesI, 0, SERIES_TERMS );
+      if( n % 256 == 0 && stopRequested )
+      {
+        return;
+      }
+    }
+  }
+
+  private boolean calcTinySeries( int last )
+  {
+    // While the deltas are too tiny for doubles, dz*dz is nothing next to
+    // 2*Z*dz, so A1 is the only coefficient (the others are 0 as doubles),
+    // and it needs no probes.  A1 is seriesR[ 0 ] times 2^seriesExponent.
+    // Return true if A1 grew to fit in a double, and false if the reference
+    // orbit ran out first (or stop was requested).
+    double dcScale = getTinyDc( seriesExponent );
+    for( int n = seriesStart; n < last; n++ )
+    {
+      double zR = orbitR[ n ];
+      double zI = orbitI[ n ];
+      double aR = seriesR[ 0 ];
+      double aI = seriesI[ 0 ];
+      seriesR[ 0 ] = 2 * ( zR * aR - zI * aI ) + dcScale;
+      seriesI[ 0 ] = 2 * ( zR * aI + zI * aR );
+      seriesStart = n + 1;
+
+      int size = Math.getExponent( Math.abs( seriesR[ 0 ] ) +
+                                   Math.abs( seriesI[ 0 ] ));
+      if( seriesExponent + size >= TINY_EXPONENT )
+      {
+        seriesR[ 0 ] = Math.scalb( seriesR[ 0 ], seriesExponent );
+        seriesI[ 0 ] = Math.scalb( seriesI[ 0 ], seriesExponent );
+        seriesExponent = 0;
+        return true;
+      }
+      if( size > RESCALE )
+      {
+        seriesR[ 0 ] = Math.scalb( seriesR[ 0 ], -size );
+        seriesI[ 0 ] = Math.scalb( seriesI[ 0 ], -size );
+        seriesExponent += size;
+        dcScale = getTinyDc( seriesExponent );
+      }
+      if( n % 256 == 0 && stopRequested )
+      {
+        break;
+      }
+    }
+    return false;
+  }
+
+  private static double evaluateSeries( double[] coefR, double[] coefI,
+                                        double uR, double uI, boolean real )
+  {
+    // Horner's rule: A1*u + A2*u^2 + ... = u*(A1 + u*(A2 + u*(...)))
+    // Returns the real part, or else the imaginary part.
+    double sR = 0.0;
+    double sI = 0.0;
+    for( int k = coefR.length - 1; k >= 0; k-- )
+    {
+      double tR = coefR[ k ] + sR * uR - sI * uI;
+      sI = coefI[ k ] + sR * uI + sI * uR;
+      sR = tR;
+    }
+    return real ? sR * uR - sI * uI : sR * uI + sI * uR;
+  }
+
+  protected int colorPixel( int x, int y, int numIterations )
+  {
+    if( numIterations == GLITCH )
+    {
+      // Leave the pixel for the next reference orbit.
+      stats.countGlitchedPoint();
+      colorNumbers.set( x, y, GLITCHED );
+      return BLACK;
+    }
+    return super.colorPixel( x, y, numIterations );
+  }
+
+  protected boolean endPasses()
+  {
+    // Calculate the glitched pixels again, each time with a new reference.
+    for( int reference = 1; findNewReference(); reference++ )
+    {
+      acceptGlitches = ( reference >= MAX_REFERENCES );
+      if( ! calcReferenceOrbit() || ! calcPass() )
+      {
+        return false; // stop was requested.
+      }
+    }
+    return true;
+  }
+
+  private boolean findNewReference()
+  {
+    // Mark the glitched pixels UNKNOWN again, and choose the one nearest to
+    // their middle as the next reference.  Return false if there are none.
+    int[] colors = colorNumbers.getData();
+    long count = 0;
+    long sumX = 0;
+    long sumY = 0;
+    for( int offset = 0; offset < colors.length; offset++ )
+    {
+      if( colors[ offset ] == GLITCHED )
+      {
+        colors[ offset ] = UNKNOWN;
+        count++;
+        sumX += offset % imageWidth;
+        sumY += offset / imageWidth;
+      }
+    }
+    if( count == 0 )
+    {
+      return false;
+    }
+
+    long middleX = sumX / count;
+    long middleY = sumY / count;
+    long nearest = Long.MAX_VALUE;
+    for( int offset = 0; offset < colors.length; offset++ )
+    {
+      if( colors[ offset ] == UNKNOWN )
+      {
+        long dx = offset % imageWidth - middleX;
+        long dy = offset / imageWidth - middleY;
+        if( dx * dx + dy * dy < nearest )
+        {
+          nearest = dx * dx + dy * dy;
+          refX = offset % imageWidth;
+          refY = offset / imageWidth;
+        }
+      }
+    }
+    return true;
+  }
+
+  protected String getConsoleOutputString()
+  {
+    if( extended )
+    {
+      return new String( "Calculating new fractal, using perturbation " +
+                         "theory with extended exponents." );
+    }
+    return new String( "Calculating new fractal, using perturbation theory." );
+  }
+
+  private double getTinyDc( int exponent )
+  {
+    // The dc of a pixel one pixel to the right of the reference, as a
+    // mantissa for the given exponent.
+    if( julia )
+    {
+      return 0.0;
+    }
+    return Math.scalb( pixelSize.getMantissa(),
+                       pixelSize.getExponent() - exponent );
+  }
+
+  protected double getImaginary( int y )
+  {
+    // The distance of row y from the reference pixel, in pixels.
+    return (double)( refY - y );
+  }
+
+  protected double getReal( int x )
+  {
+    // The distance of column x from the reference pixel, in pixels.
+    return (double)( x - refX );
+  }
+
+  protected int testPoint( double uR, double uI, int maxIterations )
+  {
+    // Iterate the delta of a point from the reference point, given its
+    // offset, (uR, uI), in pixels.  Return RAN_OUT if maxIterations was not
+    // enough to decide, GLITCH if it can not be known, or else the number of
+    // iterations it took to escape.
+    double dcR = julia ? 0.0 : uR * delta;
+    double dcI = julia ? 0.0 : uI * delta;
+    int m = julia ? 0 : 1; // Where the point is along the reference orbit.
+    int first = 1;
+    if( seriesStart > m )
+    {
+      // Skip straight to seriesStart.
+      first += seriesStart - m;
+      stats.countSkippedIterations( seriesStart - m );
+      m = seriesStart;
+    }
+
+    // dz is given by the series (which is just delta*u at the start).
+    // A tiny dz is (dzR, dzI) * 2^exponent, and dz*dz and dc are scaled to
+    // match; once it fits in a double, exponent is 0.
+    double dzR = evaluateSeries( seriesR, seriesI, uR, uI, true );
+    double dzI = evaluateSeries( seriesR, seriesI, uR, uI, false );
+    int exponent = seriesExponent;
+    double squareScale = Math.scalb( 1.0, exponent );
+    double dcScale = getTinyDc( exponent );
+
+    for( int i = first; i <= maxIterations; i++ )
+    {
+      if( ( i & ( STOP_INTERVAL - 1 )) == 0 && stopRequested )
+      {
+        return GLITCH; // It will not be used.
+      }
+
+      // dz <= 2*Z*dz + dz*dz + dc
+      double zR = orbitR[ m ];
+      double zI = orbitI[ m ];
+      double dzROld = dzR;
+      if( exponent != 0 )
+      {
+        dzR = 2 * ( zR * dzR - zI * dzI ) +
+              ( dzR * dzR - dzI * dzI ) * squareScale + uR * dcScale;
+        dzI = 2 * ( zR * dzI + zI * dzROld ) +
+              2 * dzROld * dzI * squareScale + uI * dcScale;
+        m++;
+
+        // The point is the reference point, as far as doubles can tell.
+        if( orbitR[ m ] * orbitR[ m ] + orbitI[ m ] * orbitI[ m ] >= 4 )
+        {
+          return i;
+        }
+
+        int size = Math.getExponent( Math.abs( dzR ) + Math.abs( dzI ));
+        if( exponent + size >= TINY_EXPONENT )
+        {
+          // dz fits in a double now.
+          dzR = Math.scalb( dzR, exponent );
+          dzI = Math.scalb( dzI, exponent );
+          exponent = 0;
+        }
+        else if( size > RESCALE ||
+                 ( size < -RESCALE && size >= Double.MIN_EXPONENT ))
+        {
+          dzR = Math.scalb( dzR, -size );
+          dzI = Math.scalb( dzI, -size );
+          exponent += size;
+          squareScale = Math.scalb( 1.0, exponent );
+          dcScale = getTinyDc( exponent );
+        }
+        continue;
+      }
+
+      dzR = 2 * ( zR * dzR - zI * dzI ) + dzR * dzR - dzI * dzI + dcR;
+      dzI = 2 * ( zR * dzI + zI * dzROld ) + 2 * dzROld * dzI + dcI;
+      m++;
+
+      // The point itself is the reference orbit plus the delta.
+      double pR = orbitR[ m ] + dzR;
+      double pI = orbitI[ m ] + dzI;
+      double distSquared = pR * pR + pI * pI;
+      if( distSquared >= 4 )
+      {
+        return i;
+      }
+
+      if( m == orbitLength ||
+          ( ! julia && distSquared < dzR * dzR + dzI * dzI ))
+      {
+        // Rebase: start again at the beginning of the reference orbit.
+        dzR = pR - orbitR[ 0 ];
+        dzI = pI - orbitI[ 0 ];
+        m = 0;
+      }
+      else if( distSquared < glitchSize[ m ] && ! acceptGlitches )
+      {
+        return GLITCH;
+      }
+    }
+    return RAN_OUT;
+  }
+}
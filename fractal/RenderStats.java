@@ -0,0 +1,138 @@
+////////////////////////////////////////////////////////////////////////////////
+// RenderStats Class ///////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// RenderStats counts what a FractalCalculator did to make one Drawing, so
+// that the various performance optimizations can be seen to be working.
+// The counters are updated by many worker Threads at once, so they are
+// LongAdders, which are cheap to increment from many Threads.
+
+package fractal;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class RenderStats
+{
+  private long       startTime;
+  private LongAdder  pointsTested;
+  private LongAdder  cardioidPoints;
+  private LongAdder  bulbPoints;
+  private LongAdder  periodicPoints;
+  private LongAdder  filledPoints;
+  private LongAdder  glitchedPoints;
+  private LongAdder  referenceOrbits;
+  private LongAdder  skippedIterations;
+  private LongAdder  knownPoints;
+  private LongAdder  resumedPoints;
+  private LongAdder  mirroredPoints;
+
+  protected RenderStats()
+  {
+    startTime = System.currentTimeMillis();
+    pointsTested = new LongAdder();
+    cardioidPoints = new LongAdder();
+    bulbPoints = new LongAdder();
+    periodicPoints = new LongAdder();
+    filledPoints = new LongAdder();
+    glitchedPoints = new LongAdder();
+    referenceOrbits = new LongAdder();
+    skippedIterations = new LongAdder();
+    knownPoints = new LongAdder();
+    resumedPoints = new LongAdder();
+    mirroredPoints = new LongAdder();
+  }
+
+  protected void countBulbPoint()
+  {
+    bulbPoints.increment();
+  }
+
+  protected void countCardioidPoint()
+  {
+    cardioidPoints.increment();
+  }
+
+  protected void countFilledPoints( int count )
+  {
+    filledPoints.add( count );
+  }
+
+  protected void countGlitchedPoint()
+  {
+    glitchedPoints.increment();
+  }
+
+  protected void countKnownPoint()
+  {
+    knownPoints.increment();
+  }
+
+  protected void countMirroredPoints( int count )
+  {
+    mirroredPoints.add( count );
+  }
+
+  protected void countPeriodicPoint()
+  {
+    periodicPoints.increment();
+  }
+
+  protected void countPointTested()
+  {
+    pointsTested.increment();
+  }
+
+  protected void countResumedPoints( int count )
+  {
+    resumedPoints.add( count );
+  }
+
+  protected void countReferenceOrbit()
+  {
+    referenceOrbits.increment();
+  }
+
+  protected void countSkippedIterations( int count )
+  {
+    skippedIterations.add( count );
+  }
+
+  protected void dump()
+  {
+    System.out.println( "Points tested = " + pointsTested.sum() );
+    dumpShortCut( "Points filled in without testing = ", filledPoints );
+    long known = knownPoints.sum();
+    if( known != 0 )
+    {
+      long total = known + pointsTested.sum() + filledPoints.sum();
+      System.out.println( "  Points known from the previous drawing = " +
+                          known + " (" + ( 100 * known / total ) + "%)" );
+    }
+    dumpShortCut( "Orbits continued from the previous drawing = ",
+                  resumedPoints );
+    dumpShortCut( "Points copied from their mirror images = ",
+                  mirroredPoints );
+    dumpShortCut( "Inside the main cardioid = ", cardioidPoints );
+    dumpShortCut( "Inside the period-2 bulb = ", bulbPoints );
+    dumpShortCut( "Periodic orbits = ", periodicPoints );
+    dumpShortCut( "Reference orbits = ", referenceOrbits );
+    dumpShortCut( "Glitched points, tested again = ", glitchedPoints );
+    dumpShortCut( "Iterations skipped by series approximation = ",
+                  skippedIterations );
+    System.out.println( "Elapsed time = " +
+      ( System.currentTimeMillis() - startTime ) + " ms" );
+  }
+
+  private void dumpShortCut( String name, LongAdder counter )
+  {
+    // Only mention the short cuts that were actually taken.
+    long count = counter.sum();
+    if( count != 0 )
+    {
+      System.out.println( "  " + name + count );
+    }
+  }
+}
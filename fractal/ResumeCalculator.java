@@ -0,0 +1,178 @@
+////////////////////////////////////////////////////////////////////////////////
+// ResumeCalculator Class //////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The ResumeCalculator is a performance optimization, like the
+// FastColorsCalculator.  When maxIterations has been raised, the pixels which
+// escaped, or were found to be in the set, in the previous Drawing are simply
+// reused (see FractalCalculator.reuse()), and only the pixels which ran out of
+// iterations need more work.  Their orbits carry on from the last points kept
+// in the previous Drawing's OrbitBuffer, for just the extra iterations,
+// instead of starting all over again.  Raising maxIterations several times in
+// a row then costs about as much as drawing the fractal once with the final
+// maxIterations.
+//
+// This is another example of the "Decorator" Design Pattern: the pixels which
+// have no match in the previous Drawing (see SampleMap), or which ran out
+// without a last point (those tested one at a time, as with lanes switched
+// off), are tested by the decorated calculator (Mandelbrot or Julia) from the
+// beginning.  This calculator always tests LANES pixels at once, so that it
+// keeps the last points.
+//
+// getReal() and getImaginary() return the pixel's column and row rather than
+// its coordinates, so that testPoints() can find the pixel's last point.
+
+package fractal;
+
+import fractal.utils.*;
+
+class ResumeCalculator extends FractalCalculator
+{
+  private FractalCalculator calculator; // The decorated calculator.
+  private boolean           julia;
+  private double            juliaR = 0.0; // Real
+  private double            juliaI = 0.0; // Imaginary
+
+  protected ResumeCalculator( FractalMediator fractal, Drawing newDrawing,
+                              FractalCalculator calculator )
+  {
+    super( fractal, newDrawing );
+    this.calculator = calculator;
+    calculator.stats = stats; // Share one set of statistics.
+    lanes = true; // Only testPoints() hands back the last points.
+    julia = ( newDrawing instanceof JuliaDrawing );
+    if( julia )
+    {
+      juliaR = ((JuliaDrawing) newDrawing).getJuliaPoint().getReal();
+      juliaI = ((JuliaDrawing) newDrawing).getJuliaPoint().getImaginary();
+    }
+  }
+
+  protected String getConsoleOutputString()
+  {
+    return calculator.getConsoleOutputString() +
+           "  Continuing the orbits of the previous fractal.";
+  }
+
+  protected SampleMap getMirror()
+  {
+    return calculator.getMirror();
+  }
+
+  protected double getImaginary( int y )
+  {
+    return y;
+  }
+
+  protected double getReal( int x )
+  {
+    return x;
+  }
+
+  private boolean hasLastPoint( int x, int y )
+  {
+    return previousMap.hasMatch( x, y ) &&
+           previous.hasLastPoint( previousMap.getColumn( x ),
+                                  previousMap.getRow( y ));
+  }
+
+  protected void stop()
+  {
+    // The decorated calculator's iterations must stop too.
+    super.stop();
+    calculator.stop();
+  }
+
+  protected int testPoint( double x, double y, int maxIterations )
+  {
+    // Only used by decorators; the passes call testPoints().
+    double[] r = new double[ LANES ];
+    double[] i = new double[ LANES ];
+    int[] results = new int[ LANES ];
+    r[ 0 ] = x;
+    i[ 0 ] = y;
+    testPoints( r, i, results, 1 );
+    return results[ 0 ];
+  }
+
+  protected void testPoints( double[] r, double[] i, int[] results, int n )
+  {
+    // r and i hold the pixels' columns and rows.  The orbits which can be
+    // continued are iterated together, and then the rest, from the start.
+    int[] xs = new int[ LANES ];
+    int[] ys = new int[ LANES ];
+    for( int lane = 0; lane < n; lane++ )
+    {
+      xs[ lane ] = (int) r[ lane ];
+      ys[ lane ] = (int) i[ lane ];
+    }
+    testLanes( xs, ys, r, i, results, n, true );
+    testLanes( xs, ys, r, i, results, n, false );
+  }
+
+  private void testLanes( int[] xs, int[] ys, double[] r, double[] i,
+                          int[] results, int n, boolean resume )
+  {
+    // Test those of the n pixels which do (or do not) have a last point.
+    // Their own last points are left in r and i.
+    double[] cR = new double[ LANES ];
+    double[] cI = new double[ LANES ];
+    double[] zR = new double[ LANES ];
+    double[] zI = new double[ LANES ];
+    int[] found = new int[ LANES ];
+    int[] laneOf = new int[ LANES ];
+    int count = 0;
+    for( int lane = 0; lane < n; lane++ )
+    {
+      int x = xs[ lane ];
+      int y = ys[ lane ];
+      if( hasLastPoint( x, y ) != resume )
+      {
+        continue;
+      }
+      zR[ count ] = super.getReal( x );
+      zI[ count ] = super.getImaginary( y );
+      if( resume )
+      {
+        cR[ count ] = julia ? juliaR : zR[ count ];
+        cI[ count ] = julia ? juliaI : zI[ count ];
+        zR[ count ] = previous.getLastReal( previousMap.getColumn( x ),
+                                            previousMap.getRow( y ));
+        zI[ count ] = previous.getLastImaginary( previousMap.getColumn( x ),
+                                                 previousMap.getRow( y ));
+        found[ count ] = -1;
+      }
+      laneOf[ count ] = lane;
+      count++;
+    }
+    if( count == 0 )
+    {
+      return;
+    }
+
+    // A continued orbit has already been through previousIterations.
+    int previousIterations = 0;
+    if( resume )
+    {
+      previousIterations = previous.getMaxIterations();
+      iterateLanes( cR, cI, zR, zI, found, count,
+                    maxIterations - previousIterations );
+      stats.countResumedPoints( count );
+    }
+    else
+    {
+      calculator.testPoints( zR, zI, found, count );
+    }
+    for( int k = 0; k < count; k++ )
+    {
+      int lane = laneOf[ k ];
+      results[ lane ] = ( found[ k ] > 0 ) ? found[ k ] + previousIterations
+                                           : found[ k ];
+      r[ lane ] = zR[ k ];
+      i[ lane ] = zI[ k ];
+    }
+  }
+}
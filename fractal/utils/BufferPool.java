@@ -0,0 +1,282 @@
+////////////////////////////////////////////////////////////////////////////////
+// BufferPool Class ////////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The BufferPool keeps the big arrays which are no longer needed (those of
+// deleted Drawings, of Drawings moved out of memory, and the calculators'
+// working buffers), so that the next Drawing can use them again instead of
+// allocating new ones.  Every Drawing has the same size, so once a few
+// Drawings have been calculated, a new one allocates nothing large, and the
+// garbage collector has very little to do.
+//
+// Arrays only come back to the pool when they are released explicitly, and
+// an array must not be released while anything still uses it.  An array from
+// the pool is cleared, just like a new one.  The pool keeps only a few arrays
+// of each kind; the rest are left to the garbage collector, and so is every
+// array in the pool after clear(), as when memory runs out.
+//
+// The arrays can also be written to a stream, and read back, a small chunk at
+// a time, so that doing so needs no copy of the whole array.
+
+package fractal.utils;
+
+import java.awt.image.*;
+import java.io.*;
+import java.lang.reflect.Array;
+import java.nio.*;
+import java.util.*;
+
+public class BufferPool
+{
+  private static Vector<byte[]>   bytes   = new Vector<byte[]>();
+  private static Vector<short[]>  shorts  = new Vector<short[]>();
+  private static Vector<int[]>    ints    = new Vector<int[]>();
+  private static Vector<float[]>  floats  = new Vector<float[]>();
+  private static Vector<double[]> doubles = new Vector<double[]>();
+
+  // The most arrays of each kind kept for reuse.
+  private static final int MAX_BUFFERS = 2;
+
+  // The number of values written or read at a time.
+  private static final int CHUNK = 8192;
+
+  public static synchronized void clear()
+  {
+    bytes.removeAllElements();
+    shorts.removeAllElements();
+    ints.removeAllElements();
+    floats.removeAllElements();
+    doubles.removeAllElements();
+  }
+
+  private static <T> T get( Vector<T> pool, int size )
+  {
+    // Take an array of the given size out of the pool; null if there is none.
+    for( int n = 0; n < pool.size(); n++ )
+    {
+      T array = pool.elementAt( n );
+      if( Array.getLength( array ) == size )
+      {
+        pool.removeElementAt( n );
+        return array;
+      }
+    }
+    return null;
+  }
+
+  public static synchronized byte[] getBytes( int size )
+  {
+    byte[] array = get( bytes, size );
+    if( array == null )
+    {
+      return new byte[ size ];
+    }
+    Arrays.fill( array, (byte) 0 );
+    return array;
+  }
+
+  public static synchronized double[] getDoubles( int size )
+  {
+    double[] array = get( doubles, size );
+    if( array == null )
+    {
+      return new double[ size ];
+    }
+    Arrays.fill( array, 0.0 );
+    return array;
+  }
+
+  public static synchronized float[] getFloats( int size )
+  {
+    float[] array = get( floats, size );
+    if( array == null )
+    {
+      return new float[ size ];
+    }
+    Arrays.fill( array, 0.0f );
+    return array;
+  }
+
+  public static synchronized int[] getInts( int size )
+  {
+    int[] array = get( ints, size );
+    if( array == null )
+    {
+      return new int[ size ];
+    }
+    Arrays.fill( array, 0 );
+    return array;
+  }
+
+  public static WritableRaster getRaster( int transferType, int width,
+                                          int height )
+  {
+    // A blank raster of one byte or short per pixel, the same as those made
+    // by IndexColorModel.createCompatibleWritableRaster().  Its array comes
+    // from the pool; give it back with release( DataBuffer ).
+    int size = width * height;
+    DataBuffer buffer = null;
+    if( transferType == DataBuffer.TYPE_BYTE )
+    {
+      buffer = new DataBufferByte( getBytes( size ), size );
+    }
+    else
+    {
+      buffer = new DataBufferUShort( getShorts( size ), size );
+    }
+    return Raster.createInterleavedRaster( buffer, width, height, width, 1,
+                                           new int[] { 0 }, null );
+  }
+
+  public static synchronized short[] getShorts( int size )
+  {
+    short[] array = get( shorts, size );
+    if( array == null )
+    {
+      return new short[ size ];
+    }
+    Arrays.fill( array, (short) 0 );
+    return array;
+  }
+
+  private static <T> void put( Vector<T> pool, T array )
+  {
+    if( array != null && pool.size() < MAX_BUFFERS && ! pool.contains( array ))
+    {
+      pool.addElement( array );
+    }
+  }
+
+  public static void read( DataInputStream in, Object array )
+    throws IOException
+  {
+    // Fill the array with the values written by write().
+    int length = Array.getLength( array );
+    int size = getValueSize( array );
+    byte[] chunk = new byte[ CHUNK * size ];
+    for( int offset = 0; offset < length; offset += CHUNK )
+    {
+      int n = Math.min( CHUNK, length - offset );
+      in.readFully( chunk, 0, n * size );
+      ByteBuffer values = ByteBuffer.wrap( chunk );
+      if( array instanceof byte[] )
+      {
+        values.get( (byte[]) array, offset, n );
+      }
+      else if( array instanceof short[] )
+      {
+        values.asShortBuffer().get( (short[]) array, offset, n );
+      }
+      else if( array instanceof int[] )
+      {
+        values.asIntBuffer().get( (int[]) array, offset, n );
+      }
+      else if( array instanceof float[] )
+      {
+        values.asFloatBuffer().get( (float[]) array, offset, n );
+      }
+      else
+      {
+        values.asDoubleBuffer().get( (double[]) array, offset, n );
+      }
+    }
+  }
+
+  private static int getValueSize( Object array )
+  {
+    // The size of each of the array's values, in bytes.
+    if( array instanceof byte[] )
+    {
+      return 1;
+    }
+    else if( array instanceof short[] )
+    {
+      return 2;
+    }
+    else if( array instanceof double[] )
+    {
+      return 8;
+    }
+    return 4;
+  }
+
+  public static synchronized void release( byte[] array )
+  {
+    put( bytes, array );
+  }
+
+  public static void release( DataBuffer buffer )
+  {
+    // The pixels of a raster from getRaster().  Only the array goes back to
+    // the pool; the DataBuffer itself is dropped.  Calling getData() makes
+    // Java2D stop tracking a DataBuffer's changes (so that it will not cache
+    // a copy of the image), but a DataBuffer made around an existing array,
+    // as in getRaster(), is never tracked to begin with.
+    if( buffer instanceof DataBufferByte )
+    {
+      release( ((DataBufferByte) buffer).getData() );
+    }
+    else if( buffer instanceof DataBufferUShort )
+    {
+      release( ((DataBufferUShort) buffer).getData() );
+    }
+  }
+
+  public static synchronized void release( double[] array )
+  {
+    put( doubles, array );
+  }
+
+  public static synchronized void release( float[] array )
+  {
+    put( floats, array );
+  }
+
+  public static synchronized void release( int[] array )
+  {
+    put( ints, array );
+  }
+
+  public static synchronized void release( short[] array )
+  {
+    put( shorts, array );
+  }
+
+  public static void write( DataOutputStream out, Object array )
+    throws IOException
+  {
+    // Write every value of a byte[], short[], int[], float[] or double[].
+    int length = Array.getLength( array );
+    int size = getValueSize( array );
+    byte[] chunk = new byte[ CHUNK * size ];
+    for( int offset = 0; offset < length; offset += CHUNK )
+    {
+      int n = Math.min( CHUNK, length - offset );
+      ByteBuffer values = ByteBuffer.wrap( chunk );
+      if( array instanceof byte[] )
+      {
+        values.put( (byte[]) array, offset, n );
+      }
+      else if( array instanceof short[] )
+      {
+        values.asShortBuffer().put( (short[]) array, offset, n );
+      }
+      else if( array instanceof int[] )
+      {
+        values.asIntBuffer().put( (int[]) array, offset, n );
+      }
+      else if( array instanceof float[] )
+      {
+        values.asFloatBuffer().put( (float[]) array, offset, n );
+      }
+      else
+      {
+        values.asDoubleBuffer().put( (double[]) array, offset, n );
+      }
+      out.write( chunk, 0, n * size );
+    }
+  }
+}
@@ -6,17 +6,31 @@
 // and send David some email ( david@leberknight.com ).
 //
 // The ComplexRectangle class holds a rectangle of complex coordinates.
+//
+// The coordinates are held exactly, as BigDecimals, because a double runs out
+// of digits long before the user runs out of patience for zooming in: at a
+// width of about 1e-14 the corners of the rectangle can no longer be told
+// apart from their neighbours.  Only as many digits are kept as are needed to
+// place the corners to within a tiny fraction of the width of the rectangle.
+// The width and height themselves fit in a double down to about 1e-308; beyond
+// that, they are available as FloatExps.  Calculations which need all of the
+// digits get the points of the rectangle as FixedPoints, which are much faster
+// to calculate with.
 
 package fractal.utils;
 
-import java.awt.Rectangle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 public class ComplexRectangle
 {
-  private double iMin; // imaginary
-  private double iMax;
-  private double rMin; // real
-  private double rMax;
+  private BigDecimal iMin; // imaginary
+  private BigDecimal iMax;
+  private BigDecimal rMin; // real
+  private BigDecimal rMax;
+
+  // The number of significant digits kept for the width of the rectangle.
+  private static final int WIDTH_DIGITS = 20;
 
   public ComplexRectangle( double r1, double r2, double i1, double i2 )
   {
@@ -33,39 +47,88 @@ public class ComplexRectangle
     set( cr );
   }
 
-  public double getIMin()
+  public BigDecimal getBigIMin()
   {
     return iMin;
   }
 
-  public double getIMax()
+  public BigDecimal getBigIMax()
   {
     return iMax;
   }
 
-  public double getRMin()
+  public BigDecimal getBigRMin()
   {
     return rMin;
   }
 
-  public double getRMax()
+  public BigDecimal getBigRMax()
   {
     return rMax;
   }
 
+  public double getIMin()
+  {
+    return iMin.doubleValue();
+  }
+
+  public double getIMax()
+  {
+    return iMax.doubleValue();
+  }
+
+  public double getRMin()
+  {
+    return rMin.doubleValue();
+  }
+
+  public double getRMax()
+  {
+    return rMax.doubleValue();
+  }
+
+  public FloatExp getFloatExpHeight()
+  {
+    return new FloatExp( iMax.subtract( iMin ));
+  }
+
+  public FloatExp getFloatExpWidth()
+  {
+    return new FloatExp( rMax.subtract( rMin ));
+  }
+
+  public void getPoint( FloatExp rOffset, FloatExp iOffset,
+                        FixedPoint r, FixedPoint i )
+  {
+    // Set r and i to the point at the given distances from the bottom left
+    // corner, with as many digits as they can hold.
+    r.set( rMin.add( rOffset.toBigDecimal() ));
+    i.set( iMin.add( iOffset.toBigDecimal() ));
+  }
+
   public double getHeight()
   {
-    return iMax - iMin;
+    return iMax.subtract( iMin ).doubleValue();
   }
 
   public double getWidth()
   {
-    return rMax - rMin;
+    return rMax.subtract( rMin ).doubleValue();
+  }
+
+  private static BigDecimal round( BigDecimal d, int scale )
+  {
+    // Drop the digits which are much too small to matter.
+    if( d.scale() > scale )
+    {
+      return d.setScale( scale, RoundingMode.HALF_EVEN );
+    }
+    return d;
   }
 
   public void set( ComplexRectangle cr )
   {
-    set( cr.getRMin(), cr.getRMax(), cr.getIMin(), cr.getIMax() );
+    set( cr.getBigRMin(), cr.getBigRMax(), cr.getBigIMin(), cr.getBigIMax() );
   }
 
   public void set( ComplexPoint p1, ComplexPoint p2 )
@@ -75,7 +138,13 @@ public class ComplexRectangle
 
   public void set( double r1, double r2, double i1, double i2 )
   {
-    if( r1 > r2 )
+    set( new BigDecimal( r1 ), new BigDecimal( r2 ),
+         new BigDecimal( i1 ), new BigDecimal( i2 ) );
+  }
+
+  public void set( BigDecimal r1, BigDecimal r2, BigDecimal i1, BigDecimal i2 )
+  {
+    if( r1.compareTo( r2 ) > 0 )
     {
       rMin = r2;
       rMax = r1;
@@ -85,7 +154,7 @@ public class ComplexRectangle
       rMin = r1;
       rMax = r2;
     }
-    if( i1 > i2 )
+    if( i1.compareTo( i2 ) > 0 )
     {
       iMin = i2;
       iMax = i1;
@@ -95,5 +164,16 @@ public class ComplexRectangle
       iMin = i1;
       iMax = i2;
     }
+
+    BigDecimal size = rMax.subtract( rMin ).max( iMax.subtract( iMin ));
+    if( size.signum() > 0 )
+    {
+      // The position of the leading digit of the size is precision - scale.
+      int scale = size.scale() - size.precision() + WIDTH_DIGITS;
+      rMin = round( rMin, scale );
+      rMax = round( rMax, scale );
+      iMin = round( iMin, scale );
+      iMax = round( iMax, scale );
+    }
   }
 }
\ No newline at end of file
@@ -0,0 +1,167 @@
+////////////////////////////////////////////////////////////////////////////////
+// DoubleDouble Class //////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The DoubleDouble class holds a real number as the unevaluated sum of two
+// doubles, hi + lo, where lo is less than half of an ulp of hi.  That gives
+// about 106 bits (32 decimal digits) of precision, twice that of a double, for
+// only about ten times the cost of a double: every operation is made out of a
+// handful of ordinary double operations, which compute the rounding error of
+// a sum or of a product exactly (Dekker's and Knuth's algorithms).
+//
+// DoubleDoubles are mutable, so that a calculation need not create a new
+// object for every intermediate result: each arithmetic method changes this
+// DoubleDouble, and returns it, so that calls may be chained, as in
+// z.square().add( c ).
+
+package fractal.utils;
+
+import java.math.BigDecimal;
+
+public class DoubleDouble
+{
+  private double hi;
+  private double lo;
+
+  // The relative precision of a DoubleDouble: 2^-104.
+  public static final double EPSILON = 4.93038065763132e-32;
+
+  // 2^27 + 1, used to split a double into two halves of 26 bits each.
+  private static final double SPLITTER = 134217729.0;
+
+  public DoubleDouble()
+  {
+    hi = 0.0;
+    lo = 0.0;
+  }
+
+  public DoubleDouble( double d )
+  {
+    set( d );
+  }
+
+  public DoubleDouble( BigDecimal d )
+  {
+    set( d );
+  }
+
+  public DoubleDouble add( double d )
+  {
+    // Knuth's two-sum: s + e is exactly hi + d.
+    double s = hi + d;
+    double v = s - hi;
+    double e = ( hi - ( s - v )) + ( d - v );
+    e += lo;
+    hi = s + e;
+    lo = e - ( hi - s );
+    return this;
+  }
+
+  public DoubleDouble add( DoubleDouble dd )
+  {
+    return add( dd.hi, dd.lo );
+  }
+
+  private DoubleDouble add( double bHi, double bLo )
+  {
+    // Two-sum the high parts and the low parts, then renormalize.
+    double s = hi + bHi;
+    double v = s - hi;
+    double e = ( hi - ( s - v )) + ( bHi - v );
+    double t = lo + bLo;
+    double w = t - lo;
+    double f = ( lo - ( t - w )) + ( bLo - w );
+    e += t;
+    double s2 = s + e;
+    e = e - ( s2 - s );
+    e += f;
+    hi = s2 + e;
+    lo = e - ( hi - s2 );
+    return this;
+  }
+
+  public double doubleValue()
+  {
+    return hi;
+  }
+
+  public DoubleDouble multiply( double d )
+  {
+    // Dekker's two-product: p + e is exactly hi * d.
+    double p = hi * d;
+    double e = productError( hi, d, p ) + lo * d;
+    hi = p + e;
+    lo = e - ( hi - p );
+    return this;
+  }
+
+  public DoubleDouble multiply( DoubleDouble dd )
+  {
+    double p = hi * dd.hi;
+    double e = productError( hi, dd.hi, p ) + ( hi * dd.lo + lo * dd.hi );
+    hi = p + e;
+    lo = e - ( hi - p );
+    return this;
+  }
+
+  private static double productError( double a, double b, double p )
+  {
+    // The rounding error of p = a * b, found by splitting a and b in half.
+    double t = SPLITTER * a;
+    double aHi = t - ( t - a );
+    double aLo = a - aHi;
+    t = SPLITTER * b;
+    double bHi = t - ( t - b );
+    double bLo = b - bHi;
+    return (( aHi * bHi - p ) + aHi * bLo + aLo * bHi ) + aLo * bLo;
+  }
+
+  public DoubleDouble set( double d )
+  {
+    hi = d;
+    lo = 0.0;
+    return this;
+  }
+
+  public DoubleDouble set( BigDecimal d )
+  {
+    hi = d.doubleValue();
+    lo = d.subtract( new BigDecimal( hi )).doubleValue();
+    return this;
+  }
+
+  public DoubleDouble set( DoubleDouble dd )
+  {
+    hi = dd.hi;
+    lo = dd.lo;
+    return this;
+  }
+
+  public DoubleDouble square()
+  {
+    double p = hi * hi;
+    double e = productError( hi, hi, p ) + 2.0 * hi * lo;
+    hi = p + e;
+    lo = e - ( hi - p );
+    return this;
+  }
+
+  public DoubleDouble subtract( DoubleDouble dd )
+  {
+    // Subtraction is addition of the negative; negation is exact.
+    return add( -dd.hi, -dd.lo );
+  }
+
+  public BigDecimal toBigDecimal()
+  {
+    return new BigDecimal( hi ).add( new BigDecimal( lo ));
+  }
+
+  public String toString()
+  {
+    return toBigDecimal().toString();
+  }
+}
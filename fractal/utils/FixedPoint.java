@@ -0,0 +1,425 @@
+////////////////////////////////////////////////////////////////////////////////
+// FixedPoint Class ////////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The FixedPoint class is a fast replacement for BigDecimal, for numbers which
+// are known to be small, such as the points near the Mandelbrot Set.  A
+// FixedPoint is a sign and a magnitude; the magnitude is held in an array of
+// longs, the "limbs", each of which holds the next 63 bits of it (not 64, so
+// that a limb is never negative, and a carry shows up in the 64th bit).  The
+// first limb holds the WHOLE_BITS bits of the whole number part, and the rest
+// of the bits are after the binary point, so the caller chooses the precision
+// by choosing the number of limbs (see limbsFor()).
+//
+// BigDecimal is slow for iterating z <= z*z + c because every operation creates
+// new objects, and because its digits are decimal, so they must be rounded back
+// to the wanted scale after every multiplication.  FixedPoints are mutable,
+// like DoubleDoubles: each arithmetic method changes this FixedPoint and
+// returns it, and nothing is allocated while iterating.  A product keeps only
+// the bits which fit, so it is rounded for free.  The 126 bit products of
+// pairs of limbs are made with Math.multiplyHigh().
+//
+// All of the FixedPoints in one calculation must have the same number of limbs.
+// The whole number part must stay below 2^WHOLE_BITS; for the Mandelbrot Set,
+// whose points escape as soon as |z| >= 2, it never gets beyond 6.
+//
+// main() is a benchmark, which compares the speed of iterating a Mandelbrot
+// orbit with FixedPoints and with BigDecimals:
+//
+//   java fractal.utils.FixedPoint [decimal digits] [iterations]
+
+package fractal.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+public class FixedPoint
+{
+  private long[]  limbs;
+  private boolean negative;
+
+  private static final int    LIMB_BITS = 63;
+  private static final long   LIMB_MASK = Long.MAX_VALUE;
+
+  // The number of bits before the binary point, in the first limb.
+  private static final int    WHOLE_BITS = 4;
+  private static final int    FIRST_FRACTION_BITS = LIMB_BITS - WHOLE_BITS;
+
+  public FixedPoint( int numLimbs )
+  {
+    limbs = new long[ numLimbs ];
+    negative = false;
+  }
+
+  public FixedPoint( int numLimbs, BigDecimal d )
+  {
+    this( numLimbs );
+    set( d );
+  }
+
+  public static int limbsFor( int decimalDigits )
+  {
+    // The number of limbs needed for the given number of decimal digits after
+    // the decimal point: log2( 10 ) bits per digit, plus the whole number bits.
+    int bits = (int) Math.ceil( decimalDigits * 3.3219280948873623 );
+    return ( WHOLE_BITS + bits + LIMB_BITS - 1 ) / LIMB_BITS;
+  }
+
+  public FixedPoint add( FixedPoint fp )
+  {
+    return add( fp.limbs, fp.negative );
+  }
+
+  private FixedPoint add( long[] b, boolean bNegative )
+  {
+    if( negative == bNegative )
+    {
+      addMagnitude( b );
+    }
+    else if( compareMagnitude( limbs, b ) >= 0 )
+    {
+      subtractMagnitude( limbs, b );
+      negative = negative && ! isZero();
+    }
+    else
+    {
+      // |this| < |b|, so the result has the sign of b.
+      subtractMagnitude( b, limbs );
+      negative = bNegative;
+    }
+    return this;
+  }
+
+  private void addMagnitude( long[] b )
+  {
+    // Add, from the last limb to the first; the carry is the 64th bit.
+    long carry = 0;
+    for( int k = limbs.length - 1; k >= 0; k-- )
+    {
+      long sum = limbs[ k ] + b[ k ] + carry;
+      carry = sum >>> LIMB_BITS;
+      limbs[ k ] = sum & LIMB_MASK;
+    }
+  }
+
+  private void subtractMagnitude( long[] a, long[] b )
+  {
+    // this = a - b, where a >= b.  Either a or b may be this' own limbs.
+    // A borrow makes the difference negative, which sets its 64th bit.
+    long borrow = 0;
+    for( int k = limbs.length - 1; k >= 0; k-- )
+    {
+      long difference = a[ k ] - b[ k ] - borrow;
+      borrow = difference >>> LIMB_BITS;
+      limbs[ k ] = difference & LIMB_MASK;
+    }
+  }
+
+  private static int compareMagnitude( long[] a, long[] b )
+  {
+    for( int k = 0; k < a.length; k++ )
+    {
+      if( a[ k ] != b[ k ] )
+      {
+        return ( a[ k ] < b[ k ] ) ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  public double doubleValue()
+  {
+    // The first two limbs hold many more bits than a double can.
+    double d = (double) limbs[ 0 ];
+    if( limbs.length > 1 )
+    {
+      d += (double) limbs[ 1 ] * 0x1.0p-63;
+    }
+    d *= 0x1.0p-59; // 2^-FIRST_FRACTION_BITS
+    return negative ? -d : d;
+  }
+
+  public FixedPoint multiply( FixedPoint a, FixedPoint b )
+  {
+    // this = a * b.  Either a or b (or both) may be this.
+    multiplyLimbs( a.limbs, b.limbs );
+    negative = ( a.negative != b.negative ) && ! isZero();
+    return this;
+  }
+
+  private void multiplyLimbs( long[] x, long[] y )
+  {
+    // Limb i of x times limb j of y is a 126 bit number, whose low 63 bits
+    // belong in column i + j of the product, and whose high 63 bits in column
+    // i + j - 1.  The columns are added up one at a time, from the last to the
+    // first, counting the carries out of each column, which are added into the
+    // next one.  The binary point of a product is WHOLE_BITS further left than
+    // that of a FixedPoint, so limb k of this is made out of the end of column
+    // k - 1 and the start of column k.  Column n is beyond the last limb, but
+    // its carries are not; the products which belong entirely beyond it are
+    // dropped, so the product is too small by at most a unit of the last limb.
+    int n = limbs.length;
+    long sum = 0; // The sum for column k,
+    long carries = 0; // and the carries out of it.
+    long nextColumn = 0; // The sum for column k + 1.
+    for( int k = n; k >= 0; k-- )
+    {
+      long highSum = 0; // The sum of the high halves, for column k - 1,
+      long highCarries = 0; // and the carries out of it.
+      for( int i = Math.max( 0, k - n + 1 ); i <= Math.min( k, n - 1 ); i++ )
+      {
+        long xi = x[ i ];
+        long yj = y[ k - i ];
+        long product = xi * yj;
+        sum += product & LIMB_MASK;
+        carries += sum >>> LIMB_BITS;
+        sum &= LIMB_MASK;
+        highSum += ( Math.multiplyHigh( xi, yj ) << 1 ) | ( product >>> 63 );
+        highCarries += highSum >>> LIMB_BITS;
+        highSum &= LIMB_MASK;
+      }
+      if( k < n - 1 )
+      {
+        // Columns before k need only limbs before k, so this is safe even
+        // when x or y is this FixedPoint's own limbs.
+        limbs[ k + 1 ] = shift( sum, nextColumn );
+      }
+      nextColumn = sum;
+      // Move on to column k - 1.
+      sum = carries + highSum;
+      carries = highCarries + ( sum >>> LIMB_BITS );
+      sum &= LIMB_MASK;
+    }
+    limbs[ 0 ] = shift( sum, nextColumn ); // Column -1 is the whole number.
+  }
+
+  private void squareLimbs()
+  {
+    // The same as multiplyLimbs( limbs, limbs ), except that limb i times
+    // limb j is the same as limb j times limb i, so it is calculated once and
+    // doubled; only limb i times itself is not.
+    int n = limbs.length;
+    long sum = 0;
+    long carries = 0;
+    long nextColumn = 0;
+    for( int k = n; k >= 0; k-- )
+    {
+      long highSum = 0;
+      long highCarries = 0;
+      int first = Math.max( 0, k - n + 1 );
+      for( int i = first; i < k - i; i++ )
+      {
+        long xi = limbs[ i ];
+        long yj = limbs[ k - i ];
+        long product = xi * yj;
+        // Double the product; the bits shifted out of the limbs are carries.
+        long low = product << 1;
+        long high = ( Math.multiplyHigh( xi, yj ) << 2 ) |
+                    (( product >>> 63 ) << 1 );
+        carries += low >>> LIMB_BITS;
+        highCarries += high >>> LIMB_BITS;
+        sum += low & LIMB_MASK;
+        carries += sum >>> LIMB_BITS;
+        sum &= LIMB_MASK;
+        highSum += high & LIMB_MASK;
+        highCarries += highSum >>> LIMB_BITS;
+        highSum &= LIMB_MASK;
+      }
+      if(( k & 1 ) == 0 && k / 2 >= first )
+      {
+        long xi = limbs[ k / 2 ];
+        long product = xi * xi;
+        sum += product & LIMB_MASK;
+        carries += sum >>> LIMB_BITS;
+        sum &= LIMB_MASK;
+        highSum += ( Math.multiplyHigh( xi, xi ) << 1 ) | ( product >>> 63 );
+        highCarries += highSum >>> LIMB_BITS;
+        highSum &= LIMB_MASK;
+      }
+      if( k < n - 1 )
+      {
+        limbs[ k + 1 ] = shift( sum, nextColumn );
+      }
+      nextColumn = sum;
+      sum = carries + highSum;
+      carries = highCarries + ( sum >>> LIMB_BITS );
+      sum &= LIMB_MASK;
+    }
+    limbs[ 0 ] = shift( sum, nextColumn );
+  }
+
+  private static long shift( long column, long nextColumn )
+  {
+    // The end of one column of a product and the start of the next one.
+    return (( column << WHOLE_BITS ) | ( nextColumn >>> FIRST_FRACTION_BITS ))
+           & LIMB_MASK;
+  }
+
+  private boolean isZero()
+  {
+    for( int k = 0; k < limbs.length; k++ )
+    {
+      if( limbs[ k ] != 0 )
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public FixedPoint negate()
+  {
+    negative = ! negative && ! isZero();
+    return this;
+  }
+
+  public FixedPoint set( FixedPoint fp )
+  {
+    System.arraycopy( fp.limbs, 0, limbs, 0, limbs.length );
+    negative = fp.negative;
+    return this;
+  }
+
+  public FixedPoint set( BigDecimal d )
+  {
+    // Round d to the nearest multiple of the last limb's unit.
+    int fractionBits = LIMB_BITS * limbs.length - WHOLE_BITS;
+    BigInteger units = d.abs()
+                        .multiply( new BigDecimal( BigInteger.ONE
+                                                   .shiftLeft( fractionBits )))
+                        .setScale( 0, RoundingMode.HALF_EVEN )
+                        .toBigInteger();
+    for( int k = limbs.length - 1; k >= 0; k-- )
+    {
+      limbs[ k ] = units.longValue() & LIMB_MASK; // The lowest 63 bits.
+      units = units.shiftRight( LIMB_BITS );
+    }
+    negative = ( d.signum() < 0 ) && ! isZero();
+    return this;
+  }
+
+  public FixedPoint square()
+  {
+    squareLimbs();
+    negative = false;
+    return this;
+  }
+
+  public FixedPoint subtract( FixedPoint fp )
+  {
+    // Subtraction is addition of the negative.
+    return add( fp.limbs, ! fp.negative );
+  }
+
+  public BigDecimal toBigDecimal()
+  {
+    BigInteger units = BigInteger.ZERO;
+    for( int k = 0; k < limbs.length; k++ )
+    {
+      units = units.shiftLeft( LIMB_BITS )
+                   .or( BigInteger.valueOf( limbs[ k ] ));
+    }
+    // Dividing by a power of 2 is exact in decimal.
+    int fractionBits = LIMB_BITS * limbs.length - WHOLE_BITS;
+    BigDecimal d = new BigDecimal( units ).divide(
+                     new BigDecimal( BigInteger.ONE.shiftLeft( fractionBits )));
+    return negative ? d.negate() : d;
+  }
+
+  public String toString()
+  {
+    return toBigDecimal().toString();
+  }
+
+  public static void main( String[] args )
+  {
+    // Iterate the orbit of a point inside the Mandelbrot Set, which never
+    // escapes, with FixedPoints and with BigDecimals, and compare their speed
+    // and answers.
+    int digits = ( args.length > 0 ) ? Integer.parseInt( args[ 0 ] ) : 60;
+    int iterations = ( args.length > 1 ) ? Integer.parseInt( args[ 1 ] )
+                                         : 200000;
+    BigDecimal cR = new BigDecimal(
+      "-0.123456789012345678901234567890123456789012345678901234567890123456" );
+    BigDecimal cI = new BigDecimal(
+      "0.601234567890123456789012345678901234567890123456789012345678901234" );
+    double[] bigZ = new double[ 2 ];
+    double[] fixedZ = new double[ 2 ];
+    long bestBigTime = Long.MAX_VALUE;
+    long bestFixedTime = Long.MAX_VALUE;
+
+    // The first runs warm up the JIT; the best times are compared.
+    for( int run = 1; run <= 5; run++ )
+    {
+      long bigTime = timeBigDecimal( cR, cI, digits, iterations, bigZ );
+      long fixedTime = timeFixedPoint( cR, cI, digits, iterations, fixedZ );
+      bestBigTime = Math.min( bestBigTime, bigTime );
+      bestFixedTime = Math.min( bestFixedTime, fixedTime );
+      System.out.println( "Run " + run + ": " + digits + " digits, " +
+                          iterations + " iterations." );
+      System.out.println( "  BigDecimal: " + bigTime / 1000000 + " ms, z = " +
+                          bigZ[ 0 ] + " + " + bigZ[ 1 ] + "i" );
+      System.out.println( "  FixedPoint: " + fixedTime / 1000000 + " ms, z = " +
+                          fixedZ[ 0 ] + " + " + fixedZ[ 1 ] + "i" );
+    }
+    System.out.println( "FixedPoint is " +
+                        bestBigTime / Math.max( bestFixedTime, 1 ) +
+                        " times as fast as BigDecimal." );
+  }
+
+  private static long timeBigDecimal( BigDecimal cR, BigDecimal cI, int digits,
+                                      int iterations, double[] z )
+  {
+    // Iterate z <= z*z + c with BigDecimals, the way it was done before there
+    // were FixedPoints, and return the time it took, in nanoseconds.
+    long start = System.nanoTime();
+    BigDecimal zR = BigDecimal.ZERO;
+    BigDecimal zI = BigDecimal.ZERO;
+    for( int i = 0; i < iterations; i++ )
+    {
+      BigDecimal zRzI = zR.multiply( zI );
+      zR = zR.multiply( zR ).subtract( zI.multiply( zI )).add( cR )
+             .setScale( digits, RoundingMode.HALF_EVEN );
+      zI = zRzI.add( zRzI ).add( cI )
+               .setScale( digits, RoundingMode.HALF_EVEN );
+      z[ 0 ] = zR.doubleValue();
+      z[ 1 ] = zI.doubleValue();
+      if( z[ 0 ] * z[ 0 ] + z[ 1 ] * z[ 1 ] >= 4 )
+      {
+        break;
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long timeFixedPoint( BigDecimal cR, BigDecimal cI, int digits,
+                                      int iterations, double[] z )
+  {
+    // The same as timeBigDecimal(), with FixedPoints.
+    long start = System.nanoTime();
+    int n = limbsFor( digits );
+    FixedPoint zR = new FixedPoint( n );
+    FixedPoint zI = new FixedPoint( n );
+    FixedPoint fixedCR = new FixedPoint( n, cR );
+    FixedPoint fixedCI = new FixedPoint( n, cI );
+    FixedPoint zISquared = new FixedPoint( n );
+    for( int i = 0; i < iterations; i++ )
+    {
+      zISquared.set( zI ).square();
+      zI.multiply( zR, zI );
+      zI.add( zI ).add( fixedCI );
+      zR.square().subtract( zISquared ).add( fixedCR );
+      z[ 0 ] = zR.doubleValue();
+      z[ 1 ] = zI.doubleValue();
+      if( z[ 0 ] * z[ 0 ] + z[ 1 ] * z[ 1 ] >= 4 )
+      {
+        break;
+      }
+    }
+    return System.nanoTime() - start;
+  }
+}
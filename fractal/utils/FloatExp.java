@@ -0,0 +1,227 @@
+////////////////////////////////////////////////////////////////////////////////
+// FloatExp Class //////////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The FloatExp class holds a real number as a double mantissa times a separate
+// int power of two: mantissa * 2^exponent.  It has the 53 bits of precision of
+// a double, but its exponent can not overflow or underflow, so that it can hold
+// numbers far smaller than 1e-308, the smallest that a double can hold with all
+// of its digits.  That is what the width of a very deeply zoomed drawing needs.
+//
+// The mantissa is kept between 1 and 2 (or is 0), so the exponent is the same
+// as Math.getExponent() would give for the number if it were a double.
+//
+// FloatExps are mutable, like DoubleDoubles: each arithmetic method changes
+// this FloatExp, and returns it, so that calls may be chained.
+
+package fractal.utils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+public class FloatExp
+{
+  private double mantissa;
+  private int    exponent;
+
+  // log( 2 ), to turn a power of two into a power of E.
+  private static final double LN_2 = 0.6931471805599453;
+
+  // log( 10 ) / log( 2 ), the number of bits in a decimal digit.
+  private static final double BITS_PER_DIGIT = 3.321928094887362;
+
+  // Two numbers further apart than this many powers of two do not add up.
+  private static final int ADD_RANGE = 64;
+
+  public FloatExp()
+  {
+    mantissa = 0.0;
+    exponent = 0;
+  }
+
+  public FloatExp( double d )
+  {
+    set( d );
+  }
+
+  public FloatExp( BigDecimal d )
+  {
+    set( d );
+  }
+
+  public FloatExp( FloatExp f )
+  {
+    set( f );
+  }
+
+  public FloatExp abs()
+  {
+    mantissa = Math.abs( mantissa );
+    return this;
+  }
+
+  public FloatExp add( FloatExp f )
+  {
+    return add( f.mantissa, f.exponent );
+  }
+
+  private FloatExp add( double bMantissa, int bExponent )
+  {
+    // Line up the binary points, then add the mantissas as doubles.
+    if( bMantissa == 0.0 )
+    {
+      return this;
+    }
+    if( mantissa == 0.0 || bExponent - exponent > ADD_RANGE )
+    {
+      mantissa = bMantissa;
+      exponent = bExponent;
+      return this;
+    }
+    if( exponent - bExponent > ADD_RANGE )
+    {
+      return this;
+    }
+    mantissa += Math.scalb( bMantissa, bExponent - exponent );
+    return normalize();
+  }
+
+  public FloatExp divide( double d )
+  {
+    mantissa /= d;
+    return normalize();
+  }
+
+  public FloatExp divide( FloatExp f )
+  {
+    mantissa /= f.mantissa;
+    exponent -= f.exponent;
+    return normalize();
+  }
+
+  public double doubleValue()
+  {
+    // 0 if the number is too small for a double.
+    return Math.scalb( mantissa, exponent );
+  }
+
+  public int getExponent()
+  {
+    return exponent;
+  }
+
+  public double getMantissa()
+  {
+    return mantissa;
+  }
+
+  public double log()
+  {
+    // The natural logarithm, as with Math.log().
+    return Math.log( Math.abs( mantissa )) + exponent * LN_2;
+  }
+
+  public FloatExp multiply( double d )
+  {
+    mantissa *= d;
+    return normalize();
+  }
+
+  public FloatExp multiply( FloatExp f )
+  {
+    mantissa *= f.mantissa;
+    exponent += f.exponent;
+    return normalize();
+  }
+
+  private FloatExp normalize()
+  {
+    // Move the mantissa back to between 1 and 2.
+    if( mantissa == 0.0 )
+    {
+      exponent = 0;
+      return this;
+    }
+    if( Math.abs( mantissa ) < Double.MIN_NORMAL )
+    {
+      // Math.getExponent() does not work for subnormal doubles.
+      mantissa = Math.scalb( mantissa, ADD_RANGE );
+      exponent -= ADD_RANGE;
+    }
+    int shift = Math.getExponent( mantissa );
+    mantissa = Math.scalb( mantissa, -shift );
+    exponent += shift;
+    return this;
+  }
+
+  public FloatExp set( double d )
+  {
+    mantissa = d;
+    exponent = 0;
+    return normalize();
+  }
+
+  public FloatExp set( BigDecimal d )
+  {
+    double value = d.doubleValue();
+    if( Math.abs( value ) >= Double.MIN_NORMAL || d.signum() == 0 )
+    {
+      return set( value );
+    }
+
+    // Too small for a double: first multiply it by a power of two, exactly,
+    // so that it is close to 1.  Its leading digit is at precision - scale.
+    int shift = (int)(( d.scale() - d.precision() ) * BITS_PER_DIGIT );
+    value = d.multiply( new BigDecimal( BigInteger.ONE.shiftLeft( shift )))
+             .doubleValue();
+    set( value );
+    exponent -= shift;
+    return this;
+  }
+
+  public FloatExp set( FloatExp f )
+  {
+    mantissa = f.mantissa;
+    exponent = f.exponent;
+    return this;
+  }
+
+  public int signum()
+  {
+    return ( mantissa > 0.0 ) ? 1 : ( mantissa < 0.0 ) ? -1 : 0;
+  }
+
+  public FloatExp subtract( FloatExp f )
+  {
+    return add( -f.mantissa, f.exponent );
+  }
+
+  public BigDecimal toBigDecimal()
+  {
+    // Exact: 2^-n is 5^n / 10^n.
+    BigDecimal m = new BigDecimal( mantissa );
+    if( exponent >= 0 )
+    {
+      return m.multiply( new BigDecimal( BigInteger.ONE.shiftLeft( exponent )));
+    }
+    BigInteger fives = BigInteger.valueOf( 5 ).pow( -exponent );
+    return m.multiply( new BigDecimal( fives )).scaleByPowerOfTen( exponent );
+  }
+
+  public String toString()
+  {
+    // In scientific notation, since the number may have very many digits.
+    if( mantissa == 0.0 )
+    {
+      return "0.0";
+    }
+    double log10 = Math.log10( Math.abs( mantissa )) +
+                   exponent / BITS_PER_DIGIT;
+    double power = Math.floor( log10 );
+    double digits = Math.pow( 10.0, log10 - power );
+    return ( mantissa < 0.0 ? "-" : "" ) + digits + "E" + (long) power;
+  }
+}
@@ -0,0 +1,68 @@
+////////////////////////////////////////////////////////////////////////////////
+// IterationBuffer Class ///////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The IterationBuffer class holds one int per pixel of an image, such as the
+// colorNumbers calculated for a Drawing.  The values are kept in one single
+// array, row by row (the same layout as the pixels of a BufferedImage), rather
+// than in an array of arrays, so that there is only one object per image, and
+// so that neighboring pixels are neighbors in memory.  The array comes from
+// the BufferPool, and goes back to it with release().
+
+package fractal.utils;
+
+public class IterationBuffer
+{
+  private int   width;
+  private int   height;
+  private int[] data;
+
+  public IterationBuffer( int width, int height )
+  {
+    this.width = width;
+    this.height = height;
+    data = BufferPool.getInts( width * height );
+  }
+
+  public void fill( int value )
+  {
+    java.util.Arrays.fill( data, value );
+  }
+
+  public int get( int x, int y )
+  {
+    return data[ y * width + x ];
+  }
+
+  public int[] getData()
+  {
+    // The raw row-major data, for loops that walk the pixels in order.
+    // The value for pixel ( x, y ) is at index: y * width + x
+    return data;
+  }
+
+  public int getHeight()
+  {
+    return height;
+  }
+
+  public int getWidth()
+  {
+    return width;
+  }
+
+  public void release()
+  {
+    // The buffer must not be used again.
+    BufferPool.release( data );
+    data = null;
+  }
+
+  public void set( int x, int y, int value )
+  {
+    data[ y * width + x ] = value;
+  }
+}
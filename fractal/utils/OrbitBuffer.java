@@ -0,0 +1,233 @@
+////////////////////////////////////////////////////////////////////////////////
+// OrbitBuffer Class ///////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The OrbitBuffer class holds what is needed to carry on calculating an image
+// with more iterations: the number of iterations of every pixel, as found
+// with the given maxIterations, and the last point of the orbit of every pixel
+// which had not escaped when the iterations ran out.  Like the IterationBuffer,
+// the points are kept in single arrays, row by row.  A pixel whose last point
+// is not known has NaN instead.  The last points take more memory than
+// everything else about a Drawing, so they can be dropped once they are no
+// longer likely to be needed (see dropLastPoints()).  An OrbitBuffer can also
+// be written to a stream, and read back (see fractal.HistoryStore).  Its
+// arrays come from the BufferPool, and go back to it with release().
+//
+// It also holds what is needed to color the image again in another way: the
+// raw numbers of iterations, rather than colorNumbers, and for every pixel
+// which escaped, the fraction of an iteration by which it escaped (see
+// setEscapePoint()).
+//
+// An OrbitBuffer which is not being used (that of a Drawing in the history)
+// can be compacted: its last points are dropped, and its numbers of
+// iterations are kept as shorts, if they fit.  It must be expanded again
+// before it is used.
+
+package fractal.utils;
+
+import java.io.*;
+
+public class OrbitBuffer
+{
+  private IterationBuffer iterations; // null while compacted.
+  private short[]         counts;     // The iterations, while compacted.
+  private int             width;
+  private int             height;
+  private int             maxIterations;
+  private double[]        lastR; // real
+  private double[]        lastI; // imaginary
+  private float[]         fractions;
+
+  // log( 4 ), to turn the log of |z|^2 into the log base 2 of |z|.
+  private static final double LN_4 = 1.3862943611198906;
+
+  // log( 2 ), to turn a natural log into a log base 2.
+  private static final double LN_2 = 0.6931471805599453;
+
+  public OrbitBuffer( int width, int height, int maxIterations )
+  {
+    this.width = width;
+    this.height = height;
+    this.maxIterations = maxIterations;
+    iterations = new IterationBuffer( width, height );
+    lastR = BufferPool.getDoubles( width * height );
+    lastI = BufferPool.getDoubles( width * height );
+    java.util.Arrays.fill( lastR, Double.NaN );
+    java.util.Arrays.fill( lastI, Double.NaN );
+    fractions = BufferPool.getFloats( width * height );
+  }
+
+  public void compact()
+  {
+    // Keep the buffer in less memory, while it is not being used.
+    dropLastPoints();
+    if( iterations == null || maxIterations > Short.MAX_VALUE )
+    {
+      return; // Already compacted, or the numbers do not fit.
+    }
+    int[] data = iterations.getData();
+    counts = BufferPool.getShorts( data.length );
+    for( int p = 0; p < data.length; p++ )
+    {
+      counts[ p ] = (short) data[ p ];
+    }
+    iterations.release();
+    iterations = null;
+  }
+
+  public void dropLastPoints()
+  {
+    // Forget every last point, as if none of them were known.
+    BufferPool.release( lastR );
+    BufferPool.release( lastI );
+    lastR = null;
+    lastI = null;
+  }
+
+  public void expand()
+  {
+    // Undo compact(), so that the buffer may be used; the last points stay
+    // dropped.
+    if( counts == null )
+    {
+      return;
+    }
+    iterations = new IterationBuffer( width, height );
+    int[] data = iterations.getData();
+    for( int p = 0; p < data.length; p++ )
+    {
+      data[ p ] = counts[ p ];
+    }
+    BufferPool.release( counts );
+    counts = null;
+  }
+
+  public float getFraction( int x, int y )
+  {
+    // 0 if the pixel did not escape, or its escape point is not known.
+    return fractions[ y * iterations.getWidth() + x ];
+  }
+
+  public long getMemorySize()
+  {
+    // Roughly how many bytes the buffer takes.
+    long pixels = (long) width * height;
+    int perPixel = ( counts == null ? 4 : 2 ) + 4 + ( lastR == null ? 0 : 16 );
+    return pixels * perPixel;
+  }
+
+  public IterationBuffer getIterations()
+  {
+    return iterations;
+  }
+
+  public double getLastImaginary( int x, int y )
+  {
+    return lastI[ y * iterations.getWidth() + x ];
+  }
+
+  public double getLastReal( int x, int y )
+  {
+    return lastR[ y * iterations.getWidth() + x ];
+  }
+
+  public int getMaxIterations()
+  {
+    return maxIterations;
+  }
+
+  public static OrbitBuffer read( DataInputStream in ) throws IOException
+  {
+    // Read back an OrbitBuffer written by write().
+    int width = in.readInt();
+    int height = in.readInt();
+    OrbitBuffer buffer = new OrbitBuffer( width, height, in.readInt() );
+    if( in.readBoolean() )
+    {
+      buffer.compact();
+      BufferPool.read( in, buffer.counts );
+    }
+    else
+    {
+      BufferPool.read( in, buffer.iterations.getData() );
+    }
+    BufferPool.read( in, buffer.fractions );
+    if( ! in.readBoolean() )
+    {
+      buffer.dropLastPoints();
+      return buffer;
+    }
+    BufferPool.read( in, buffer.lastR );
+    BufferPool.read( in, buffer.lastI );
+    return buffer;
+  }
+
+  public void release()
+  {
+    // Hand every array back to the BufferPool; the buffer must not be used
+    // again.
+    dropLastPoints();
+    if( iterations != null )
+    {
+      iterations.release();
+    }
+    BufferPool.release( counts );
+    BufferPool.release( fractions );
+    counts = null;
+    fractions = null;
+  }
+
+  public boolean hasLastPoint( int x, int y )
+  {
+    return lastR != null &&
+           ! Double.isNaN( lastR[ y * iterations.getWidth() + x ] );
+  }
+
+  public void setEscapePoint( int x, int y, double r, double i )
+  {
+    // The first point of the pixel's orbit outside the escape radius, 2.  The
+    // further past it, the sooner the orbit would have escaped with a bigger
+    // radius: the fraction is 1 - log2( log2( |z| )), from 1 at |z| = 2 down
+    // to 0 at |z| = 4.
+    double log2 = Math.log( r * r + i * i ) / LN_4;
+    double fraction = 1.0 - Math.log( log2 ) / LN_2;
+    if( Double.isNaN( fraction ))
+    {
+      fraction = 0.0;
+    }
+    setFraction( x, y, (float) Math.max( 0.0, Math.min( fraction, 1.0 )));
+  }
+
+  public void setFraction( int x, int y, float fraction )
+  {
+    fractions[ y * iterations.getWidth() + x ] = fraction;
+  }
+
+  public void setLastPoint( int x, int y, double r, double i )
+  {
+    lastR[ y * iterations.getWidth() + x ] = r;
+    lastI[ y * iterations.getWidth() + x ] = i;
+  }
+
+  public void write( DataOutputStream out ) throws IOException
+  {
+    // Write everything in the buffer, for read().
+    out.writeInt( width );
+    out.writeInt( height );
+    out.writeInt( maxIterations );
+    out.writeBoolean( counts != null );
+    BufferPool.write( out, ( counts != null ) ? (Object) counts
+                                              : iterations.getData() );
+    BufferPool.write( out, fractions );
+    out.writeBoolean( lastR != null );
+    if( lastR == null )
+    {
+      return;
+    }
+    BufferPool.write( out, lastR );
+    BufferPool.write( out, lastI );
+  }
+}
@@ -0,0 +1,150 @@
+////////////////////////////////////////////////////////////////////////////////
+// SampleMap Class /////////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// The SampleMap class maps the pixels of one image onto those of another image
+// of the same fractal, wherever the two sample the same complex point.  Pixel
+// ( x, y ) is the point ( rMin + x * delta, iMin + ( height - y ) * delta ), so
+// the pixels of two images line up column by column and row by row: a pixel
+// has a match only if both its column and its row do.
+//
+// A column or row matches if its coordinate is within a small fraction of a
+// pixel (TOLERANCE) of one of the other image's.
+//
+// A SampleMap may also map an image onto itself, mirrored in the real axis
+// (see mirrorReal()) or through the origin (see mirrorOrigin()), for the
+// symmetries of the Mandelbrot and Julia Sets.  A mirrored pixel is copied
+// rather than calculated, so there a column or row matches only if its mirror
+// image lands exactly on the other one; only the rounding errors of working
+// out where it lands (ROUNDING) are allowed for.
+
+package fractal.utils;
+
+import java.math.BigDecimal;
+
+public class SampleMap
+{
+  private int[] columns; // The matching column of each column, or -1.
+  private int[] rows;    // The matching row of each row, or -1.
+  private int   columnCount;
+  private int   rowCount;
+
+  // How far apart (in pixels) two samples may be, and still be the same.
+  private static final double TOLERANCE = 0.01;
+
+  // How far apart (in ulps of the image's size) a mirrored sample may be from
+  // another, and still be the same.
+  private static final double ROUNDING = 16.0;
+
+  public SampleMap( ComplexRectangle from, ComplexRectangle to,
+                    int width, int height )
+  {
+    // Map the pixels of the image of rectangle to onto those of the image of
+    // rectangle from.  Both images are width by height pixels.
+    FloatExp fromDelta = from.getFloatExpWidth().divide( (double) width );
+    FloatExp toDelta = to.getFloatExpWidth().divide( (double) width );
+    double ratio = new FloatExp( toDelta ).divide( fromDelta ).doubleValue();
+    double rOffset = getOffset( to.getBigRMin(), from.getBigRMin(), fromDelta );
+    double iOffset = getOffset( to.getBigIMin(), from.getBigIMin(), fromDelta );
+
+    // Column x is at column rOffset + x * ratio of the other image; row y is
+    // at row height - iOffset - ( height - y ) * ratio.
+    set( width, height, rOffset, ratio,
+         height - iOffset - height * ratio, ratio, TOLERANCE * ratio );
+  }
+
+  private SampleMap( int width, int height, double rOffset, double rRatio,
+                     double iOffset, double iRatio )
+  {
+    // A mirror map.
+    set( width, height, rOffset, rRatio, iOffset, iRatio,
+         ROUNDING * Math.ulp( (double) Math.max( width, height )));
+  }
+
+  public int getColumn( int x )
+  {
+    return columns[ x ];
+  }
+
+  public int getCount()
+  {
+    // The number of pixels which have a match.
+    return columnCount * rowCount;
+  }
+
+  private static double getOffset( BigDecimal a, BigDecimal b, FloatExp delta )
+  {
+    // How many pixels a is from b.
+    return new FloatExp( a.subtract( b )).divide( delta ).doubleValue();
+  }
+
+  public int getRow( int y )
+  {
+    return rows[ y ];
+  }
+
+  public boolean hasMatch( int x, int y )
+  {
+    return columns[ x ] >= 0 && rows[ y ] >= 0;
+  }
+
+  public static SampleMap mirrorOrigin( ComplexRectangle rect,
+                                        int width, int height )
+  {
+    // Map each pixel of the image of rect onto the pixel at minus its point.
+    // Column x is at rMin + x * delta, so -rMin - x * delta is at column
+    // -2 * rMin / delta - x.  The rows are as for mirrorReal().
+    FloatExp delta = rect.getFloatExpWidth().divide( (double) width );
+    double r = new FloatExp( rect.getBigRMin() ).divide( delta ).doubleValue();
+    double i = new FloatExp( rect.getBigIMin() ).divide( delta ).doubleValue();
+    return new SampleMap( width, height, -2.0 * r, -1.0,
+                          2.0 * ( height + i ), -1.0 );
+  }
+
+  public static SampleMap mirrorReal( ComplexRectangle rect,
+                                      int width, int height )
+  {
+    // Map each pixel of the image of rect onto the pixel at its complex
+    // conjugate.  Row y is at iMin + ( height - y ) * delta, so its conjugate
+    // is at row 2 * ( height + iMin / delta ) - y.
+    FloatExp delta = rect.getFloatExpWidth().divide( (double) width );
+    double i = new FloatExp( rect.getBigIMin() ).divide( delta ).doubleValue();
+    return new SampleMap( width, height, 0.0, 1.0,
+                          2.0 * ( height + i ), -1.0 );
+  }
+
+  private void set( int width, int height, double rOffset, double rRatio,
+                    double iOffset, double iRatio, double tolerance )
+  {
+    // Column x is at column rOffset + x * rRatio; row y is at row
+    // iOffset + y * iRatio.  The tolerance is in pixels of the other image.
+    columns = new int[ width ];
+    for( int x = 0; x < width; x++ )
+    {
+      columns[ x ] = match( rOffset + x * rRatio, tolerance, width );
+      columnCount += ( columns[ x ] < 0 ) ? 0 : 1;
+    }
+    rows = new int[ height ];
+    for( int y = 0; y < height; y++ )
+    {
+      rows[ y ] = match( iOffset + y * iRatio, tolerance, height );
+      rowCount += ( rows[ y ] < 0 ) ? 0 : 1;
+    }
+  }
+
+  private static int match( double position, double tolerance, int size )
+  {
+    // The column (or row) at the given position, if there is one close
+    // enough.
+    long nearest = Math.round( position );
+    if( nearest < 0 || nearest >= size ||
+        Math.abs( position - nearest ) > Math.abs( tolerance ))
+    {
+      return -1;
+    }
+    return (int) nearest;
+  }
+}
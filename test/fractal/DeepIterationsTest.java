@@ -0,0 +1,71 @@
+////////////////////////////////////////////////////////////////////////////////
+// DeepIterationsTest Class ////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// DeepIterationsTest draws a view deep enough for the DoubleDoubleCalculator,
+// all of whose pixels run out of iterations, and then draws it again with more
+// iterations, reusing the first Drawing's pixels as the Fractal does.  The
+// pixels which ran out must be calculated again, so that the result is the
+// same as drawing the view with more iterations from scratch.  (Were they
+// taken to be in the set, they would all simply be copied, and stay black.)
+
+package fractal;
+
+import java.math.*;
+import fractal.utils.*;
+
+class DeepIterationsTest
+{
+  private static final int SIZE = 64;
+  private static final int FEW_ITERATIONS = 1000;
+  private static final int MORE_ITERATIONS = 3000;
+
+  public static void main( String[] args )
+  {
+    BigDecimal r = new BigDecimal( "-0.743643887037158704752191506114774" );
+    BigDecimal i = new BigDecimal( "0.131825904205311970493132056385139" );
+    BigDecimal half = new BigDecimal( "0.5E-13" );
+    ComplexRectangle rect = new ComplexRectangle();
+    rect.set( r.subtract( half ), r.add( half ), i.subtract( half ),
+              i.add( half ));
+
+    TestFractal tf = new TestFractal( SIZE, SIZE );
+    Drawing few = tf.calculate( new DoubleDoubleCalculator( tf,
+                    new Drawing( rect, FEW_ITERATIONS, null, null, "" )));
+    Drawing more = tf.calculate( new DoubleDoubleCalculator( tf,
+                     new Drawing( rect, MORE_ITERATIONS, null, null, "" )));
+
+    tf.setCurrent( few );
+    FractalCalculator fc = new DoubleDoubleCalculator( tf,
+                             new Drawing( rect, MORE_ITERATIONS, null, null,
+                                          "" ));
+    fc.reuse( few.getOrbits(), new SampleMap( rect, rect, SIZE, SIZE ));
+    Drawing reused = tf.calculate( fc );
+
+    int ranOut = 0;
+    int escaped = 0;
+    for( int y = 0; y < SIZE; y++ )
+    {
+      for( int x = 0; x < SIZE; x++ )
+      {
+        int before = few.getOrbits().getIterations().get( x, y );
+        int after = more.getOrbits().getIterations().get( x, y );
+        ranOut += ( before == FractalCalculator.RAN_OUT ) ? 1 : 0;
+        escaped += ( before == FractalCalculator.RAN_OUT && after > 0 ) ? 1 : 0;
+        TestFractal.check(
+          reused.getOrbits().getIterations().get( x, y ) == after &&
+          reused.getOrbits().getFraction( x, y ) ==
+            more.getOrbits().getFraction( x, y ),
+          "pixel " + x + ", " + y + " was not calculated again." );
+      }
+    }
+    TestFractal.check( ranOut == SIZE * SIZE,
+                       "only " + ranOut + " pixels ran out of iterations." );
+    TestFractal.check( escaped > 0, "no pixel escapes with more iterations." );
+    System.out.println( "DeepIterationsTest passed: " + escaped + " of " +
+                        ranOut + " pixels escape with more iterations." );
+  }
+}
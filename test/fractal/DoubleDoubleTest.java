@@ -0,0 +1,112 @@
+////////////////////////////////////////////////////////////////////////////////
+// DoubleDoubleTest Class //////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// DoubleDoubleTest adds, subtracts, multiplies and squares random
+// DoubleDoubles, of the size of the points near the Mandelbrot Set, and checks
+// each result against the exact one, made with BigDecimals.  A result may be
+// off by a few units of DoubleDouble.EPSILON, relative to the operands: a sum
+// relative to the bigger of the two, since a difference of nearly equal
+// numbers can have far fewer digits than they do, and a product relative to
+// itself.  set( BigDecimal ) must round to within EPSILON.
+
+package fractal;
+
+import java.math.*;
+import java.util.*;
+import fractal.utils.*;
+
+class DoubleDoubleTest
+{
+  private static final int TRIALS = 10000;
+
+  // The largest error allowed, in units of EPSILON.
+  private static final double TOLERANCE = 4.0;
+
+  private static final BigInteger FIVE = BigInteger.valueOf( 5 );
+
+  private static final BigDecimal EPSILON =
+    new BigDecimal( DoubleDouble.EPSILON );
+
+  public static void main( String[] args )
+  {
+    Random random = new Random( 2000 );
+    double worst = 0.0;
+    for( int trial = 0; trial < TRIALS; trial++ )
+    {
+      BigDecimal a = random( random );
+      BigDecimal b = random( random );
+      if( trial % 10 == 0 )
+      {
+        // Nearly equal numbers, whose difference cancels most of the digits.
+        b = a.add( random( random ).scaleByPowerOfTen( -20 ));
+      }
+      String operands = a + " and " + b;
+      DoubleDouble x = new DoubleDouble( a );
+      DoubleDouble y = new DoubleDouble( b );
+      check( x, a, a, operands + ", set()", 1.0 );
+
+      BigDecimal size = a.abs().max( b.abs() );
+      worst = Math.max( worst, check( new DoubleDouble( a ).add( y ),
+                                      a.add( b ), size,
+                                      operands + ", added", TOLERANCE ));
+      worst = Math.max( worst, check( new DoubleDouble( a ).subtract( y ),
+                                      a.subtract( b ), size,
+                                      operands + ", subtracted",
+                                      TOLERANCE ));
+      BigDecimal product = a.multiply( b );
+      worst = Math.max( worst, check( new DoubleDouble( a ).multiply( y ),
+                                      product, product,
+                                      operands + ", multiplied", TOLERANCE ));
+      BigDecimal square = a.multiply( a );
+      worst = Math.max( worst, check( x.square(), square, square,
+                                      a + ", squared", TOLERANCE ));
+
+      // An ordinary double operand, as in multiplying by 2.
+      double d = b.doubleValue();
+      BigDecimal exact = new BigDecimal( d );
+      worst = Math.max( worst, check( new DoubleDouble( a ).add( d ),
+                                      a.add( exact ),
+                                      a.abs().max( exact.abs() ),
+                                      a + " plus " + d, TOLERANCE ));
+      worst = Math.max( worst, check( new DoubleDouble( a ).multiply( d ),
+                                      a.multiply( exact ), a.multiply( exact ),
+                                      a + " times " + d, TOLERANCE ));
+    }
+    System.out.println( "DoubleDoubleTest passed: " + TRIALS + " trials, " +
+                        "the worst was off by " + (float) worst +
+                        " times EPSILON." );
+  }
+
+  private static BigDecimal random( Random random )
+  {
+    // From -2 to 2, with more digits than a DoubleDouble can hold.
+    // That is 121 random bits times 2^-120, which is 5^120 / 10^120.
+    BigDecimal d = new BigDecimal( new BigInteger( 121, random )
+                                   .multiply( FIVE.pow( 120 )), 120 );
+    return random.nextBoolean() ? d.negate() : d;
+  }
+
+  private static double check( DoubleDouble dd, BigDecimal exact,
+                               BigDecimal size, String message,
+                               double tolerance )
+  {
+    // Returns the error, in units of EPSILON times size.
+    if( size.signum() == 0 )
+    {
+      TestFractal.check( dd.toBigDecimal().signum() == 0,
+                         message + ": is " + dd + ", not 0." );
+      return 0.0;
+    }
+    double error = dd.toBigDecimal().subtract( exact ).abs()
+                     .divide( size.abs().multiply( EPSILON ),
+                              MathContext.DECIMAL64 ).doubleValue();
+    TestFractal.check( error <= tolerance,
+                       message + ": is " + dd + ", off by " + (float) error +
+                       " times EPSILON." );
+    return error;
+  }
+}
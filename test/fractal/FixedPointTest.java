@@ -0,0 +1,103 @@
+////////////////////////////////////////////////////////////////////////////////
+// FixedPointTest Class ////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// FixedPointTest multiplies and squares random FixedPoints of several numbers
+// of limbs, and checks each product against the exact one, made with
+// BigDecimals.  A FixedPoint product drops the bits beyond its last limb, so
+// it may be smaller than the exact one, by less than a unit of the last limb.
+// The products are also made the way the PerturbationCalculator makes them,
+// with the result in the place of one of the factors, as in
+// zI.multiply( zR, zI ), which must not change them.
+
+package fractal;
+
+import java.math.*;
+import java.util.*;
+import fractal.utils.*;
+
+class FixedPointTest
+{
+  private static final int MAX_LIMBS = 6;
+  private static final int TRIALS = 300;
+
+  public static void main( String[] args )
+  {
+    Random random = new Random( 2000 );
+    for( int limbs = 1; limbs <= MAX_LIMBS; limbs++ )
+    {
+      for( int trial = 0; trial < TRIALS; trial++ )
+      {
+        // Factors below 2, like the points of an orbit which has not escaped.
+        BigDecimal r = random( random, limbs );
+        BigDecimal i = random( random, limbs );
+        String factors = limbs + " limbs, " + r + " times " + i;
+
+        FixedPoint zR = new FixedPoint( limbs, r );
+        FixedPoint zI = new FixedPoint( limbs, i );
+        TestFractal.check( zR.toBigDecimal().compareTo( r ) == 0 &&
+                           zI.toBigDecimal().compareTo( i ) == 0,
+                           factors + ": set() is not exact." );
+
+        FixedPoint product = new FixedPoint( limbs ).multiply( zR, zI );
+        checkProduct( product, r.multiply( i ), limbs, factors );
+
+        FixedPoint square = new FixedPoint( limbs, r ).square();
+        checkProduct( square, r.multiply( r ), limbs, factors + ", squared" );
+        FixedPoint self = new FixedPoint( limbs, r );
+        self.multiply( self, self );
+        TestFractal.check( same( square, self ),
+                           factors + ": square() and multiply() differ." );
+
+        zI.multiply( zR, zI );
+        TestFractal.check( same( zI, product ),
+                           factors + ": zI.multiply( zR, zI ) differs." );
+        zR.multiply( zR, new FixedPoint( limbs, i ));
+        TestFractal.check( same( zR, product ),
+                           factors + ": zR.multiply( zR, zI ) differs." );
+      }
+    }
+    System.out.println( "FixedPointTest passed: " + TRIALS + " products " +
+                        "of each of 1 to " + MAX_LIMBS + " limbs." );
+  }
+
+  private static BigDecimal random( Random random, int limbs )
+  {
+    // A random FixedPoint's worth of bits, from -2 to 2.
+    int fractionBits = 63 * limbs - 4;
+    BigDecimal d = units( new BigInteger( fractionBits + 1, random ), limbs );
+    return random.nextBoolean() ? d.negate() : d;
+  }
+
+  private static BigDecimal units( BigInteger units, int limbs )
+  {
+    // Units of the last limb, which are 2^-fractionBits; that is exactly
+    // 5^fractionBits / 10^fractionBits.
+    int fractionBits = 63 * limbs - 4;
+    return new BigDecimal( units.multiply( BigInteger.valueOf( 5 )
+                                           .pow( fractionBits )),
+                           fractionBits );
+  }
+
+  private static void checkProduct( FixedPoint product, BigDecimal exact,
+                                    int limbs, String message )
+  {
+    // The magnitude may be too small, by less than a unit of the last limb.
+    BigDecimal unit = units( BigInteger.ONE, limbs );
+    BigDecimal error = exact.abs().subtract( product.toBigDecimal().abs() );
+    TestFractal.check( error.signum() >= 0 && error.compareTo( unit ) < 0,
+                       message + ": the product is off by " + error );
+    TestFractal.check( product.toBigDecimal().signum() == exact.signum() ||
+                       product.toBigDecimal().signum() == 0,
+                       message + ": the product has the wrong sign." );
+  }
+
+  private static boolean same( FixedPoint a, FixedPoint b )
+  {
+    return a.toBigDecimal().compareTo( b.toBigDecimal() ) == 0 &&
+           a.toString().equals( b.toString() );
+  }
+}
@@ -0,0 +1,78 @@
+////////////////////////////////////////////////////////////////////////////////
+// FloatExpTest Class //////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// FloatExpTest checks FloatExps far below 1e-308, where a double runs out of
+// exponent: set( BigDecimal ) and toBigDecimal() must give back the number
+// to the precision of a double, products and quotients must stay as precise,
+// and after each of them the mantissa must be normalized, between 1 and 2,
+// even when it went through a subnormal double.
+
+package fractal;
+
+import java.math.*;
+import fractal.utils.*;
+
+class FloatExpTest
+{
+  // A little more than the rounding of one double operation, 2^-53.
+  private static final BigDecimal PRECISION = new BigDecimal( "3E-16" );
+
+  public static void main( String[] args )
+  {
+    int checked = 0;
+    for( int digits = 290; digits <= 3000; digits += 97 )
+    {
+      for( String sign : new String[] { "", "-" } )
+      {
+        BigDecimal d = new BigDecimal( sign + "1.2345678901234567E-" + digits );
+        FloatExp f = new FloatExp( d );
+        check( f, d, "set( " + d + " )" );
+
+        // The square is far too small for a double, as are the factors.
+        FloatExp square = new FloatExp( f ).multiply( f );
+        check( square, d.multiply( d ), "the square of " + d );
+        check( square.divide( f ), d, "the square of " + d + ", over it" );
+        check( new FloatExp( f ).multiply( 1.0e-300 ),
+               d.multiply( new BigDecimal( 1.0e-300 )), d + " times 1e-300" );
+        checked++;
+      }
+    }
+
+    // Subnormal doubles have less precision; they must still be normalized.
+    for( double d = Double.MIN_VALUE; d < Double.MIN_NORMAL; d *= 3.0 )
+    {
+      FloatExp f = new FloatExp( d );
+      check( f, new BigDecimal( d ), "set( " + d + " )" );
+      int exponent = Math.getExponent( d * 0x1.0p100 ) - 100;
+      TestFractal.check( f.getExponent() == exponent,
+                         d + ": the exponent is " + f.getExponent() );
+      TestFractal.check( f.doubleValue() == d, d + ": doubleValue() differs." );
+      checked++;
+    }
+
+    FloatExp tiny = new FloatExp( new BigDecimal( "1E-400" ));
+    TestFractal.check( tiny.doubleValue() == 0.0,
+                       "1E-400 is not 0 as a double." );
+    FloatExp zero = new FloatExp( BigDecimal.ZERO );
+    TestFractal.check( zero.signum() == 0 && zero.getExponent() == 0,
+                       "0 is " + zero );
+    System.out.println( "FloatExpTest passed: " + checked + " numbers." );
+  }
+
+  private static void check( FloatExp f, BigDecimal exact, String message )
+  {
+    double mantissa = Math.abs( f.getMantissa() );
+    TestFractal.check( mantissa >= 1.0 && mantissa < 2.0,
+                       message + ": the mantissa is " + f.getMantissa() );
+    TestFractal.check( f.signum() == exact.signum(),
+                       message + ": the sign differs." );
+    BigDecimal error = f.toBigDecimal().subtract( exact ).abs()
+                        .divide( exact.abs(), MathContext.DECIMAL64 );
+    TestFractal.check( error.compareTo( PRECISION ) <= 0,
+                       message + ": is " + f + ", off by " + error );
+  }
+}
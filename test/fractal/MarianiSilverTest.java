@@ -0,0 +1,92 @@
+////////////////////////////////////////////////////////////////////////////////
+// MarianiSilverTest Class /////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// MarianiSilverTest draws a few Mandelbrot and Julia Sets both with and
+// without the MarianiSilverCalculator, and checks that their OrbitBuffers are
+// identical: the same raw numbers of iterations, the same escape fractions,
+// and the same last points.  The views have many more iterations than there
+// are colors, so that many numbers of iterations share one color.
+
+package fractal;
+
+import fractal.utils.*;
+
+class MarianiSilverTest
+{
+  private static final int SIZE = 200;
+
+  // rMin, rMax, iMin, iMax, maxIterations, and the Julia point, if any.
+  private static final double[][] VIEWS =
+  {
+    { -2.5, 1.5, -2.0, 2.0, 100 },
+    { -0.75, -0.74, 0.1, 0.11, 1000 },
+    { -1.8, -1.7, -0.05, 0.05, 500 },
+    { -2.5, 1.5, -2.0, 2.0, 5000 },
+    { -2.0, 2.0, -2.0, 2.0, 2000, -0.123, 0.745 },
+    { -2.0, 2.0, -2.0, 2.0, 1000, 0.285, 0.01 },
+  };
+
+  public static void main( String[] args )
+  {
+    TestFractal tf = new TestFractal( SIZE, SIZE );
+    for( int v = 0; v < VIEWS.length; v++ )
+    {
+      double[] view = VIEWS[ v ];
+      OrbitBuffer brute = tf.calculate( makeCalculator( tf, view ))
+                            .getOrbits();
+      OrbitBuffer subdivided = tf.calculate(
+        new MarianiSilverCalculator( tf, makeDrawing( view ),
+                                     makeCalculator( tf, view ))).getOrbits();
+      for( int y = 0; y < SIZE; y++ )
+      {
+        for( int x = 0; x < SIZE; x++ )
+        {
+          String pixel = "view " + v + ", pixel " + x + ", " + y;
+          TestFractal.check( subdivided.getIterations().get( x, y ) ==
+                             brute.getIterations().get( x, y ),
+                             pixel + ": the number of iterations differs." );
+          TestFractal.check( subdivided.getFraction( x, y ) ==
+                             brute.getFraction( x, y ),
+                             pixel + ": the escape fraction differs." );
+          TestFractal.check( subdivided.hasLastPoint( x, y ) ==
+                             brute.hasLastPoint( x, y ),
+                             pixel + ": only one has a last point." );
+          TestFractal.check( ! brute.hasLastPoint( x, y ) ||
+                             ( subdivided.getLastReal( x, y ) ==
+                               brute.getLastReal( x, y ) &&
+                               subdivided.getLastImaginary( x, y ) ==
+                               brute.getLastImaginary( x, y )),
+                             pixel + ": the last point differs." );
+        }
+      }
+    }
+    System.out.println( "MarianiSilverTest passed." );
+  }
+
+  private static FractalCalculator makeCalculator( TestFractal tf,
+                                                   double[] view )
+  {
+    Drawing d = makeDrawing( view );
+    if( d instanceof JuliaDrawing )
+    {
+      return new JuliaCalculator( tf, d );
+    }
+    return new MandelbrotCalculator( tf, d );
+  }
+
+  private static Drawing makeDrawing( double[] view )
+  {
+    ComplexRectangle rect = new ComplexRectangle( view[ 0 ], view[ 1 ],
+                                                  view[ 2 ], view[ 3 ] );
+    if( view.length > 5 )
+    {
+      return new JuliaDrawing( rect, (int) view[ 4 ], null, null, "",
+                               new ComplexPoint( view[ 5 ], view[ 6 ] ));
+    }
+    return new Drawing( rect, (int) view[ 4 ], null, null, "" );
+  }
+}
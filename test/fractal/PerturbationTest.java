@@ -0,0 +1,80 @@
+////////////////////////////////////////////////////////////////////////////////
+// PerturbationTest Class //////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// PerturbationTest draws a view 1e-20 wide, which is deep enough for the
+// PerturbationCalculator, but not yet too deep for the DoubleDoubleCalculator,
+// with both of them, and compares the raw numbers of iterations.  Nearly all of
+// the pixels must be the same.  A few of them, whose orbits pass close to a
+// miniature copy of the Mandelbrot Set, magnify the rounding errors of both
+// calculators over thousands of iterations, and may differ; checked against
+// BigDecimals, it is the double-doubles' 32 digits which are the less exact.
+// But the pixels which escape must escape in both.
+//
+// The view is drawn once more with extended exponents, which must not change
+// any pixel: the deltas are only kept as extended exponents while they are
+// tiny, and then go on as doubles.
+
+package fractal;
+
+import java.math.*;
+import fractal.utils.*;
+
+class PerturbationTest
+{
+  private static final int SIZE = 64;
+  private static final int MAX_ITERATIONS = 20000;
+
+  // The fraction of the pixels which must have the same number of iterations.
+  private static final double MIN_SAME = 0.99;
+
+  public static void main( String[] args )
+  {
+    BigDecimal r = new BigDecimal( "-0.743643887037158704752191506114774" );
+    BigDecimal i = new BigDecimal( "0.131825904205311970493132056385139" );
+    BigDecimal half = new BigDecimal( "0.5E-20" );
+    ComplexRectangle rect = new ComplexRectangle();
+    rect.set( r.subtract( half ), r.add( half ), i.subtract( half ),
+              i.add( half ));
+
+    TestFractal tf = new TestFractal( SIZE, SIZE );
+    IterationBuffer doubleDoubles = tf.calculate( new DoubleDoubleCalculator(
+      tf, new Drawing( rect, MAX_ITERATIONS, null, null, "" )))
+      .getOrbits().getIterations();
+    OrbitBuffer perturbed = tf.calculate( new PerturbationCalculator( tf,
+      new Drawing( rect, MAX_ITERATIONS, null, null, "" ), false ))
+      .getOrbits();
+    OrbitBuffer extended = tf.calculate( new PerturbationCalculator( tf,
+      new Drawing( rect, MAX_ITERATIONS, null, null, "" ), true ))
+      .getOrbits();
+
+    int same = 0;
+    int escaped = 0;
+    for( int y = 0; y < SIZE; y++ )
+    {
+      for( int x = 0; x < SIZE; x++ )
+      {
+        String pixel = "pixel " + x + ", " + y;
+        int expected = doubleDoubles.get( x, y );
+        int actual = perturbed.getIterations().get( x, y );
+        same += ( actual == expected ) ? 1 : 0;
+        escaped += ( expected > 0 ) ? 1 : 0;
+        TestFractal.check( ( actual > 0 ) == ( expected > 0 ),
+                           pixel + " escapes with only one calculator." );
+        TestFractal.check( extended.getIterations().get( x, y ) == actual &&
+                           extended.getFraction( x, y ) ==
+                             perturbed.getFraction( x, y ),
+                           pixel + " differs with extended exponents." );
+      }
+    }
+    TestFractal.check( escaped > 0, "no pixel escapes." );
+    TestFractal.check( same >= MIN_SAME * SIZE * SIZE,
+                       "only " + same + " pixels are the same." );
+    System.out.println( "PerturbationTest passed: " + same + " of " +
+                        ( SIZE * SIZE ) + " pixels are the same as with " +
+                        "double-doubles." );
+  }
+}
@@ -0,0 +1,134 @@
+////////////////////////////////////////////////////////////////////////////////
+// TestFractal Class ///////////////////////////////////////////////////////////
+////////////////////////////////////////////////////////////////////////////////
+// Copyright 2000 - David Leberknight - Anyone may use this code for any reason
+// at any time, provided that they give an appropriate reference to this source,
+// and send David some email ( david@leberknight.com ).
+//
+// TestFractal stands in for the Fractal applet in the tests, so that the
+// calculators can be run without a window: it has a fixed image size and
+// color map, and it simply keeps the Drawing which a calculator hands back.
+// The calculators run on the calling Thread (see calculate()).
+//
+// An Applet can not be constructed without a display, so the TestFractal is
+// not a Fractal, but another FractalMediator.
+//
+// To run the tests, from the top directory:
+//   javac -d classes fractal/*.java fractal/utils/*.java test/fractal/*.java
+//   java -Djava.awt.headless=true -cp classes fractal.<TestClass>
+// Each test prints "passed", or else throws a RuntimeException.
+
+package fractal;
+
+import java.awt.*;
+import fractal.utils.*;
+
+class TestFractal implements FractalMediator
+{
+  private Color[] colorMap;
+  private Drawing current;
+  private Drawing result;
+  private int     imageWidth;
+  private int     imageHeight;
+
+  protected TestFractal( int width, int height )
+  {
+    imageWidth = width;
+    imageHeight = height;
+    colorMap = new Color[ 256 ];
+    for( int n = 0; n < colorMap.length; n++ )
+    {
+      colorMap[ n ] = new Color( Color.HSBtoRGB( n / 256.0f, 1.0f, 1.0f ));
+    }
+  }
+
+  protected static void check( boolean ok, String message )
+  {
+    if( ! ok )
+    {
+      throw new RuntimeException( "Test failed: " + message );
+    }
+  }
+
+  protected Drawing calculate( FractalCalculator fc )
+  {
+    // Run the calculator to the end; returns its new Drawing.
+    result = null;
+    fc.run();
+    check( result != null, "the calculator did not finish." );
+    return result;
+  }
+
+  public synchronized void calculatorCallback( boolean success,
+                                               Drawing newDrawing )
+  {
+    result = success ? newDrawing : null;
+  }
+
+  public synchronized void calculatorPreview( Image preview )
+  {
+  }
+
+  public Color[] getCurrentColorMap()
+  {
+    return colorMap;
+  }
+
+  public Drawing getCurrentDrawing()
+  {
+    return current;
+  }
+
+  public int getImageHeight()
+  {
+    return imageHeight;
+  }
+
+  public int getImageWidth()
+  {
+    return imageWidth;
+  }
+
+  public boolean hasLanes()
+  {
+    return true;
+  }
+
+  public boolean hasPeriodicityChecking()
+  {
+    return true;
+  }
+
+  public boolean hasProgressiveRefinement()
+  {
+    return false;
+  }
+
+  public boolean hasSeriesApproximation()
+  {
+    return true;
+  }
+
+  public boolean hasSymmetry()
+  {
+    return false;
+  }
+
+  public void outOfMemory( boolean oom )
+  {
+    check( ! oom, "out of memory." );
+  }
+
+  protected void setCurrent( Drawing d )
+  {
+    current = d;
+  }
+
+  public void setStatus( String s )
+  {
+  }
+
+  public void setStatus2( String s )
+  {
+  }
+}